@@ -0,0 +1,636 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+//* On-disk cache of resolved programs, so rerunning an unchanged script skips scanning, parsing and resolving.
+// Entries are named by the SHA-256 of the script's bytes. Each holds the Stmt/Expr tree and where the resolver
+// put each variable, in a compact binary form:
+//   header:  magic, format version, source hash, payload length, payload CRC32
+//   payload: string table, then the statements. Numbers are varints except doubles; strings are table indexes.
+// Anything which doesn't check out (wrong version, wrong hash, bad checksum, truncated) is treated as a miss.
+class AstCache {
+	private static final int MAGIC = 0x4a4c5843; // "JLXC"
+	private static final int VERSION = 7;
+	private static final int HEADER_SIZE = 4 + 4 + 32 + 4 + 8;
+
+	// Node tags. 0 stands for a missing (null) node.
+	private static final byte NONE = 0;
+	private static final byte ASSIGN = 1, BINARY = 2, CALL = 3, GET = 4, GROUPING = 5, LITERAL = 6, LOGICAL = 7,
+			SET = 8, SUPER = 9, THIS = 10, UNARY = 11, VARIABLE = 12, INVOKE = 13;
+	private static final byte BLOCK = 20, CLASS = 21, EXPRESSION = 22, FUNCTION = 23, IF = 24, PRINT = 25,
+			RETURN = 26, VAR = 27, WHILE = 28, IMPORT = 29;
+
+	// Literal value tags.
+	private static final byte NIL = 0, FALSE = 1, TRUE = 2, NUMBER = 3, STRING = 4;
+
+	private final Path directory;
+
+	AstCache(Path directory) {
+		this.directory = directory;
+	}
+
+	//* Hashes a script's bytes into the key its entry is stored under.
+	static byte[] hash(ByteBuffer content) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(content.duplicate());
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // Every JVM has SHA-256
+		}
+	}
+
+	//* Loads a cached program, already resolved. Returns null if there is no usable entry.
+	List<Stmt> load(byte[] key) {
+		Path path = entry(key);
+		if (!Files.isRegularFile(path))
+			return null;
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				return null;
+			byte[] hash = new byte[32];
+			buffer.get(hash);
+			if (!Arrays.equals(hash, key))
+				return null;
+
+			int length = buffer.getInt();
+			long checksum = buffer.getLong();
+			if (length != buffer.remaining())
+				return null;
+
+			CRC32 crc = new CRC32();
+			crc.update(buffer.duplicate());
+			if (crc.getValue() != checksum)
+				return null;
+
+			return new Reader(buffer).statements();
+		} catch (IOException | RuntimeException e) {
+			return null; // Corrupt. The caller compiles from source and overwrites it
+		}
+	}
+
+	//* Writes a resolved program to the cache. Failing to write is not an error, the next run just compiles again.
+	void store(byte[] key, List<Stmt> statements) {
+		try {
+			byte[] payload = new Writer().write(statements);
+
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).put(key).putInt(payload.length).putLong(crc.getValue());
+
+			// Write beside the entry and move it into place, so other runs never see half a file.
+			Files.createDirectories(directory);
+			Path temp = Files.createTempFile(directory, "entry", ".tmp");
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				channel.write(header.flip());
+				channel.write(ByteBuffer.wrap(payload));
+			}
+			Files.move(temp, entry(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// Leave the cache as it was.
+		}
+	}
+
+	private Path entry(byte[] key) {
+		StringBuilder name = new StringBuilder();
+		for (byte b : key)
+			name.append(String.format("%02x", b));
+		return directory.resolve(name.append(".jlxc").toString());
+	}
+
+	//~ Writing
+
+	//* Flattens a program into the payload format.
+	private static class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+		private final Map<String, Integer> strings = new HashMap<>();
+		private final List<String> stringTable = new ArrayList<>();
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+
+		byte[] write(List<Stmt> statements) throws IOException {
+			writeStatements(statements);
+			byte[] tree = bytes.toByteArray();
+
+			// The string table goes first so the reader has it before any node refers to it
+			bytes.reset();
+			writeInt(stringTable.size());
+			for (String string : stringTable) {
+				byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+				writeInt(utf8.length);
+				out.write(utf8);
+			}
+			out.write(tree);
+			return bytes.toByteArray();
+		}
+
+		private void writeStatements(List<? extends Stmt> statements) {
+			writeInt(statements.size());
+			for (Stmt statement : statements)
+				write(statement);
+		}
+
+		private void write(Stmt stmt) {
+			if (stmt == null)
+				writeByte(NONE);
+			else
+				stmt.accept(this);
+		}
+
+		private void write(Expr expr) {
+			if (expr == null)
+				writeByte(NONE);
+			else
+				expr.accept(this);
+		}
+
+		//* Writes where the resolver put a variable, then its slot if it is a local.
+		private void writeLocation(int location, int slot) {
+			writeByte(location);
+			if (location != Resolver.GLOBAL)
+				writeInt(slot);
+		}
+
+		private void writeInts(int[] values) {
+			writeInt(values.length);
+			for (int value : values)
+				writeInt(value);
+		}
+
+		private void write(Token token) {
+			writeByte(token.type.ordinal());
+			writeString(token.lexeme);
+			writeLiteral(token.literal);
+			writeInt(token.line);
+		}
+
+		private void writeTokens(List<Token> tokens) {
+			writeInt(tokens.size());
+			for (Token token : tokens)
+				write(token);
+		}
+
+		private void writeLiteral(Object value) {
+			try {
+				if (value == null) {
+					out.writeByte(NIL);
+				} else if (value instanceof Boolean) {
+					out.writeByte((Boolean) value ? TRUE : FALSE);
+				} else if (value instanceof Double) {
+					out.writeByte(NUMBER);
+					out.writeDouble((Double) value);
+				} else {
+					out.writeByte(STRING);
+					writeString((String) value);
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e); // Can't happen writing to memory
+			}
+		}
+
+		private void writeString(String string) {
+			Integer index = strings.get(string);
+			if (index == null) {
+				index = stringTable.size();
+				strings.put(string, index);
+				stringTable.add(string);
+			}
+			writeInt(index);
+		}
+
+		private void writeByte(int value) {
+			bytes.write(value);
+		}
+
+		//* Writes a non-negative int in 7-bit groups, so small numbers take one byte.
+		private void writeInt(int value) {
+			while ((value & ~0x7f) != 0) {
+				bytes.write((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			bytes.write(value);
+		}
+
+		//~ Expressions
+
+		@Override
+		public Void visitAssignExpr(Expr.Assign expr) {
+			writeByte(ASSIGN);
+			write(expr.name);
+			write(expr.value);
+			writeLocation(Resolver.location(expr), Resolver.slot(expr));
+			return null;
+		}
+
+		@Override
+		public Void visitBinaryExpr(Expr.Binary expr) {
+			writeByte(BINARY);
+			write(expr.left);
+			write(expr.operator);
+			write(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitCallExpr(Expr.Call expr) {
+			writeByte(CALL);
+			write(expr.callee);
+			write(expr.paren);
+			writeInt(expr.arguments.size());
+			for (Expr argument : expr.arguments)
+				write(argument);
+			return null;
+		}
+
+		@Override
+		public Void visitInvokeExpr(Expr.Invoke expr) {
+			writeByte(INVOKE);
+			write(expr.object);
+			write(expr.name);
+			write(expr.paren);
+			writeInt(expr.arguments.size());
+			for (Expr argument : expr.arguments)
+				write(argument);
+			return null;
+		}
+
+		@Override
+		public Void visitGetExpr(Expr.Get expr) {
+			writeByte(GET);
+			write(expr.object);
+			write(expr.name);
+			return null;
+		}
+
+		@Override
+		public Void visitGroupingExpr(Expr.Grouping expr) {
+			writeByte(GROUPING);
+			write(expr.expression);
+			return null;
+		}
+
+		@Override
+		public Void visitLiteralExpr(Expr.Literal expr) {
+			writeByte(LITERAL);
+			writeLiteral(expr.value);
+			return null;
+		}
+
+		@Override
+		public Void visitLogicalExpr(Expr.Logical expr) {
+			writeByte(LOGICAL);
+			write(expr.operator);
+			write(expr.left);
+			write(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitSetExpr(Expr.Set expr) {
+			writeByte(SET);
+			write(expr.object);
+			write(expr.name);
+			write(expr.value);
+			return null;
+		}
+
+		@Override
+		public Void visitSuperExpr(Expr.Super expr) {
+			writeByte(SUPER);
+			write(expr.keyword);
+			write(expr.method);
+			writeLocation(expr.location, expr.slot);
+			writeLocation(expr.thisLocation, expr.thisSlot);
+			return null;
+		}
+
+		@Override
+		public Void visitThisExpr(Expr.This expr) {
+			writeByte(THIS);
+			write(expr.keyword);
+			writeLocation(Resolver.location(expr), Resolver.slot(expr));
+			return null;
+		}
+
+		@Override
+		public Void visitUnaryExpr(Expr.Unary expr) {
+			writeByte(UNARY);
+			write(expr.operator);
+			write(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitVariableExpr(Expr.Variable expr) {
+			writeByte(VARIABLE);
+			write(expr.name);
+			writeLocation(Resolver.location(expr), Resolver.slot(expr));
+			return null;
+		}
+
+		//~ Statements
+
+		@Override
+		public Void visitBlockStmt(Stmt.Block stmt) {
+			writeByte(BLOCK);
+			writeStatements(stmt.statements);
+			writeInt(stmt.frameSize);
+			return null;
+		}
+
+		@Override
+		public Void visitClassStmt(Stmt.Class stmt) {
+			writeByte(CLASS);
+			write(stmt.name);
+			write(stmt.superclass);
+			writeStatements(stmt.methods);
+			writeLocation(stmt.location, stmt.slot);
+			return null;
+		}
+
+		@Override
+		public Void visitExpressionStmt(Stmt.Expression stmt) {
+			writeByte(EXPRESSION);
+			write(stmt.expression);
+			return null;
+		}
+
+		@Override
+		public Void visitFunctionStmt(Stmt.Function stmt) {
+			writeByte(FUNCTION);
+			write(stmt.name);
+			writeTokens(stmt.params);
+			writeStatements(stmt.body);
+			// Always resolved here, b/c skimmed bodies aren't cached
+			writeLocation(stmt.location, stmt.slot);
+			writeInt(stmt.frameSize);
+			writeInts(stmt.cells);
+			writeInts(stmt.captures); // Sources can be negative. They are rare enough that the five bytes don't matter
+			return null;
+		}
+
+		@Override
+		public Void visitIfStmt(Stmt.If stmt) {
+			writeByte(IF);
+			write(stmt.condition);
+			write(stmt.thenBranch);
+			write(stmt.elseBranch);
+			return null;
+		}
+
+		@Override
+		public Void visitImportStmt(Stmt.Import stmt) {
+			writeByte(IMPORT);
+			write(stmt.keyword);
+			writeString(stmt.path);
+			return null;
+		}
+
+		@Override
+		public Void visitPrintStmt(Stmt.Print stmt) {
+			writeByte(PRINT);
+			write(stmt.expression);
+			return null;
+		}
+
+		@Override
+		public Void visitReturnStmt(Stmt.Return stmt) {
+			writeByte(RETURN);
+			write(stmt.keyword);
+			write(stmt.value);
+			return null;
+		}
+
+		@Override
+		public Void visitVarStmt(Stmt.Var stmt) {
+			writeByte(VAR);
+			write(stmt.name);
+			write(stmt.initializer);
+			writeLocation(stmt.location, stmt.slot);
+			return null;
+		}
+
+		@Override
+		public Void visitWhileStmt(Stmt.While stmt) {
+			writeByte(WHILE);
+			write(stmt.condition);
+			write(stmt.body);
+			return null;
+		}
+	}
+
+	//~ Reading
+
+	//* Rebuilds a program from the payload format. Throws if the payload doesn't make sense.
+	private static class Reader {
+		private static final TokenType[] types = TokenType.values();
+
+		private final ByteBuffer in;
+		private final String[] strings;
+
+		Reader(ByteBuffer in) {
+			this.in = in;
+
+			strings = new String[readInt()];
+			for (int i = 0; i < strings.length; i++) {
+				byte[] utf8 = new byte[readInt()];
+				in.get(utf8);
+				strings[i] = new String(utf8, StandardCharsets.UTF_8);
+			}
+		}
+
+		List<Stmt> statements() {
+			List<Stmt> statements = new ArrayList<>();
+			int count = readInt();
+			for (int i = 0; i < count; i++)
+				statements.add(statement());
+			return statements;
+		}
+
+		private Stmt statement() {
+			byte tag = in.get();
+			switch (tag) {
+				case NONE:
+					return null;
+				case BLOCK: {
+					Stmt.Block block = new Stmt.Block(statements());
+					block.frameSize = readInt();
+					return block;
+				}
+				case CLASS: {
+					Token name = token();
+					Expr.Variable superclass = (Expr.Variable) expression();
+					List<Stmt.Function> methods = new ArrayList<>();
+					int count = readInt();
+					for (int i = 0; i < count; i++)
+						methods.add((Stmt.Function) statement());
+					Stmt.Class klass = new Stmt.Class(name, superclass, methods);
+					klass.location = in.get();
+					klass.slot = klass.location == Resolver.GLOBAL ? 0 : readInt();
+					return klass;
+				}
+				case EXPRESSION:
+					return new Stmt.Expression(expression());
+				case FUNCTION: {
+					Token name = token();
+					List<Token> params = new ArrayList<>();
+					int count = readInt();
+					for (int i = 0; i < count; i++)
+						params.add(token());
+					Stmt.Function function = new Stmt.Function(name, params, statements());
+					function.location = in.get();
+					function.slot = function.location == Resolver.GLOBAL ? 0 : readInt();
+					function.frameSize = readInt();
+					function.cells = readInts();
+					function.captures = readInts();
+					return function;
+				}
+				case IF:
+					return new Stmt.If(expression(), statement(), statement());
+				case IMPORT:
+					return new Stmt.Import(token(), strings[readInt()]);
+				case PRINT:
+					return new Stmt.Print(expression());
+				case RETURN:
+					return new Stmt.Return(token(), expression());
+				case VAR: {
+					Stmt.Var var = new Stmt.Var(token(), expression());
+					var.location = in.get();
+					var.slot = var.location == Resolver.GLOBAL ? 0 : readInt();
+					return var;
+				}
+				case WHILE:
+					return new Stmt.While(expression(), statement());
+				default:
+					throw new IllegalStateException("Bad statement tag " + tag);
+			}
+		}
+
+		private Expr expression() {
+			byte tag = in.get();
+			switch (tag) {
+				case NONE:
+					return null;
+				case ASSIGN:
+					return location(new Expr.Assign(token(), expression()));
+				case BINARY:
+					return new Expr.Binary(expression(), token(), expression());
+				case CALL: {
+					Expr callee = expression();
+					Token paren = token();
+					List<Expr> arguments = new ArrayList<>();
+					int count = readInt();
+					for (int i = 0; i < count; i++)
+						arguments.add(expression());
+					return new Expr.Call(callee, paren, arguments);
+				}
+				case INVOKE: {
+					Expr object = expression();
+					Token name = token();
+					Token paren = token();
+					List<Expr> arguments = new ArrayList<>();
+					int count = readInt();
+					for (int i = 0; i < count; i++)
+						arguments.add(expression());
+					return new Expr.Invoke(object, name, paren, arguments);
+				}
+				case GET:
+					return new Expr.Get(expression(), token());
+				case GROUPING:
+					return new Expr.Grouping(expression());
+				case LITERAL:
+					return new Expr.Literal(literal());
+				case LOGICAL:
+					return new Expr.Logical(token(), expression(), expression());
+				case SET:
+					return new Expr.Set(expression(), token(), expression());
+				case SUPER: {
+					Expr.Super expr = (Expr.Super) location(new Expr.Super(token(), token()));
+					expr.thisLocation = in.get();
+					expr.thisSlot = expr.thisLocation == Resolver.GLOBAL ? 0 : readInt();
+					return expr;
+				}
+				case THIS:
+					return location(new Expr.This(token()));
+				case UNARY:
+					return new Expr.Unary(token(), expression());
+				case VARIABLE:
+					return location(new Expr.Variable(token()));
+				default:
+					throw new IllegalStateException("Bad expression tag " + tag);
+			}
+		}
+
+		//* Reads the resolver location which follows a variable-like node.
+		private Expr location(Expr expr) {
+			int location = in.get();
+			Resolver.locate(expr, location, location == Resolver.GLOBAL ? 0 : readInt(), false);
+			return expr;
+		}
+
+		private int[] readInts() {
+			int[] values = new int[readInt()];
+			for (int i = 0; i < values.length; i++)
+				values[i] = readInt();
+			return values;
+		}
+
+		private Token token() {
+			TokenType type = types[in.get()];
+			String lexeme = strings[readInt()];
+			Object literal = literal();
+			return new Token(type, lexeme, literal, readInt());
+		}
+
+		private Object literal() {
+			byte tag = in.get();
+			switch (tag) {
+				case NIL:
+					return null;
+				case FALSE:
+					return false;
+				case TRUE:
+					return true;
+				case NUMBER:
+					return in.getDouble();
+				case STRING:
+					return strings[readInt()];
+				default:
+					throw new IllegalStateException("Bad literal tag " + tag);
+			}
+		}
+
+		private int readInt() {
+			int value = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = in.get();
+				value |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+		}
+	}
+}
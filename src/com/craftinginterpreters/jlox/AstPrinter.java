@@ -62,6 +62,15 @@ public class AstPrinter implements Expr.Visitor<String>{
 		return builder.toString();
 	}
 
+	@Override
+	public String visitInvokeExpr(Expr.Invoke expr) {
+		Expr[] exprs = new Expr[expr.arguments.size() + 1];
+		exprs[0] = expr.object;
+		for (int i = 0; i < expr.arguments.size(); i++)
+			exprs[i + 1] = expr.arguments.get(i);
+		return parenthesize("invoke " + expr.name.lexeme, exprs);
+	}
+
 	@Override
 	public String visitGetExpr(Expr.Get expr) {
 		return parenthesize("get " + expr.name.lexeme, expr.object);
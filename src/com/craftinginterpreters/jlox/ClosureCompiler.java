@@ -0,0 +1,510 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//* Turns resolved trees into closures which run them, as an alternative to the Interpreter walking the tree.
+// Each node is compiled once into a small object holding its compiled children, with everything that can be worked
+// out beforehand already done: where variables live, which operator to apply, how many arguments a call passes.
+// Running one is then a single call per node, instead of accept() and a visit method picking the work out again.
+//
+// The closures take the interpreter they run in, so compiled code isn't tied to one. They share its frames, cells,
+// globals and return signal, so compiled and tree-walked code can call each other freely. Function bodies are
+// compiled the first time they are called and kept on their declaration (see Interpreter.executeBody()).
+class ClosureCompiler implements Expr.Visitor<ClosureCompiler.Code>, Stmt.Visitor<ClosureCompiler.Step> {
+	//* A compiled expression.
+	interface Code {
+		Object run(Interpreter interpreter);
+	}
+
+	//* A compiled statement.
+	interface Step {
+		void run(Interpreter interpreter);
+	}
+
+	Code compile(Expr expr) {
+		return expr.accept(this);
+	}
+
+	Step compile(Stmt stmt) {
+		return stmt.accept(this);
+	}
+
+	//* Compiles statements which run one after another, stopping at a return.
+	Step compile(List<Stmt> statements) {
+		Step[] steps = new Step[statements.size()];
+		for (int i = 0; i < steps.length; i++)
+			steps[i] = compile(statements.get(i));
+
+		if (steps.length == 1) // Whatever runs it checks for a return afterwards anyway
+			return steps[0];
+		return in -> {
+			for (Step step : steps) {
+				step.run(in);
+				if (in.isReturning())
+					return;
+			}
+		};
+	}
+
+	private Code[] compileAll(List<Expr> exprs) {
+		Code[] codes = new Code[exprs.size()];
+		for (int i = 0; i < codes.length; i++)
+			codes[i] = compile(exprs.get(i));
+		return codes;
+	}
+
+	//~ Statements
+
+	@Override
+	public Step visitExpressionStmt(Stmt.Expression stmt) {
+		Code expression = compile(stmt.expression);
+		return in -> expression.run(in);
+	}
+
+	@Override
+	public Step visitPrintStmt(Stmt.Print stmt) {
+		Code expression = compile(stmt.expression);
+		return in -> System.out.println(in.stringify(expression.run(in)));
+	}
+
+	@Override
+	public Step visitImportStmt(Stmt.Import stmt) {
+		return in -> in.visitImportStmt(stmt);
+	}
+
+	@Override
+	public Step visitVarStmt(Stmt.Var stmt) {
+		Code initializer = stmt.initializer == null ? in -> null : compile(stmt.initializer);
+		int slot = stmt.slot;
+		switch (stmt.location) {
+			case Resolver.LOCAL:
+				return in -> in.setLocal(slot, initializer.run(in));
+			case Resolver.BOXED:
+				return in -> in.box(slot, initializer.run(in));
+			default: {
+				String name = stmt.name.lexeme;
+				return in -> in.globals.define(name, initializer.run(in));
+			}
+		}
+	}
+
+	@Override
+	public Step visitBlockStmt(Stmt.Block stmt) {
+		Step statements = compile(stmt.statements);
+		if (stmt.frameSize == 0) // Its variables go in the running call's frame
+			return statements;
+
+		int size = stmt.frameSize; // An outermost block outside of any function has a frame of its own
+		return in -> {
+			int caller = in.pushFrame(size);
+			try {
+				statements.run(in);
+			} finally {
+				in.popFrame(caller);
+			}
+		};
+	}
+
+	@Override
+	public Step visitIfStmt(Stmt.If stmt) {
+		Code condition = compile(stmt.condition);
+		Step thenBranch = compile(stmt.thenBranch);
+		if (stmt.elseBranch == null) {
+			return in -> {
+				if (in.isTruthy(condition.run(in)))
+					thenBranch.run(in);
+			};
+		}
+
+		Step elseBranch = compile(stmt.elseBranch);
+		return in -> {
+			if (in.isTruthy(condition.run(in)))
+				thenBranch.run(in);
+			else
+				elseBranch.run(in);
+		};
+	}
+
+	@Override
+	public Step visitWhileStmt(Stmt.While stmt) {
+		Code condition = compile(stmt.condition);
+		Step body = compile(stmt.body);
+		return in -> {
+			while (in.isTruthy(condition.run(in))) {
+				body.run(in);
+				if (in.isReturning())
+					break;
+				in.safepoint();
+			}
+		};
+	}
+
+	// Declarations run once per time they are reached rather than per iteration of anything, so they use the
+	// interpreter's own code. Their bodies are still compiled, on first call.
+
+	@Override
+	public Step visitFunctionStmt(Stmt.Function stmt) {
+		return in -> in.visitFunctionStmt(stmt);
+	}
+
+	@Override
+	public Step visitClassStmt(Stmt.Class stmt) {
+		return in -> in.visitClassStmt(stmt);
+	}
+
+	@Override
+	public Step visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.value == null)
+			return in -> in.returnWith(null);
+		Code value = compile(stmt.value);
+		return in -> in.returnWith(value.run(in));
+	}
+
+	//~ Expressions
+
+	@Override
+	public Code visitLiteralExpr(Expr.Literal expr) {
+		Object value = expr.value;
+		return in -> value;
+	}
+
+	@Override
+	public Code visitGroupingExpr(Expr.Grouping expr) {
+		return compile(expr.expression); // Only there for the parser
+	}
+
+	@Override
+	public Code visitVariableExpr(Expr.Variable expr) {
+		if (expr.location != Resolver.GLOBAL)
+			return read(expr.location, expr.slot);
+
+		Token name = expr.name;
+		return in -> {
+			Environment.Cell cell = expr.cell;
+			if (cell == null || cell.owner != in.globals) // Link the site to its global the first time it runs
+				cell = expr.cell = in.globals.cell(name.lexeme);
+			return cell.get(name);
+		};
+	}
+
+	@Override
+	public Code visitThisExpr(Expr.This expr) {
+		return read(expr.location, expr.slot);
+	}
+
+	//* Reads a local from where the resolver put it.
+	private static Code read(int location, int slot) {
+		switch (location) {
+			case Resolver.LOCAL:
+				return in -> in.getLocal(slot);
+			case Resolver.BOXED:
+				return in -> in.cellAt(slot).value;
+			default:
+				return in -> in.captured(slot).value;
+		}
+	}
+
+	@Override
+	public Code visitAssignExpr(Expr.Assign expr) {
+		Code value = compile(expr.value);
+		int slot = expr.slot;
+		switch (expr.location) {
+			case Resolver.LOCAL:
+				return in -> {
+					Object result = value.run(in);
+					in.setLocal(slot, result);
+					return result;
+				};
+			case Resolver.BOXED:
+				return in -> in.cellAt(slot).value = value.run(in);
+			case Resolver.CAPTURED:
+				return in -> in.captured(slot).value = value.run(in);
+			default: {
+				Token name = expr.name;
+				return in -> {
+					Object result = value.run(in);
+					Environment.Cell cell = expr.cell;
+					if (cell == null || cell.owner != in.globals)
+						cell = expr.cell = in.globals.cell(name.lexeme);
+					cell.assign(name, result);
+					return result;
+				};
+			}
+		}
+	}
+
+	@Override
+	public Code visitBinaryExpr(Expr.Binary expr) {
+		Code left = compile(expr.left);
+		Code right = compile(expr.right);
+		Token operator = expr.operator;
+
+		switch (operator.type) {
+			case MINUS:
+				return in -> {
+					Object a = left.run(in), b = right.run(in);
+					in.checkNumberOperands(operator, a, b);
+					return (double) a - (double) b;
+				};
+			case SLASH:
+				return in -> {
+					Object a = left.run(in), b = right.run(in);
+					in.checkNumberOperands(operator, a, b);
+					return (double) a / (double) b;
+				};
+			case STAR:
+				return in -> {
+					Object a = left.run(in), b = right.run(in);
+					in.checkNumberOperands(operator, a, b);
+					return (double) a * (double) b;
+				};
+
+			// Mathematical addition and string concatenation
+			case PLUS:
+				return in -> {
+					Object a = left.run(in), b = right.run(in);
+					if (a instanceof Double && b instanceof Double)
+						return (double) a + (double) b;
+					if (a instanceof String && b instanceof String)
+						return (String) a + (String) b;
+					throw new RuntimeError(operator, "Operands must either be 2 numbers or 2 strings.");
+				};
+
+			case LESSER:
+				return in -> {
+					Object a = left.run(in), b = right.run(in);
+					in.checkNumberOperands(operator, a, b);
+					return (double) a < (double) b;
+				};
+			case GREATER:
+				return in -> {
+					Object a = left.run(in), b = right.run(in);
+					in.checkNumberOperands(operator, a, b);
+					return (double) a > (double) b;
+				};
+			case LESSER_EQUAL:
+				return in -> {
+					Object a = left.run(in), b = right.run(in);
+					in.checkNumberOperands(operator, a, b);
+					return (double) a <= (double) b;
+				};
+			case GREATER_EQUAL:
+				return in -> {
+					Object a = left.run(in), b = right.run(in);
+					in.checkNumberOperands(operator, a, b);
+					return (double) a >= (double) b;
+				};
+
+			case EQUAL_EQUAL:
+				return in -> in.isEqual(left.run(in), right.run(in));
+			case BANG_EQUAL:
+				return in -> !in.isEqual(left.run(in), right.run(in));
+
+			default:
+				return in -> {
+					left.run(in);
+					right.run(in);
+					return null;
+				};
+		}
+	}
+
+	@Override
+	public Code visitLogicalExpr(Expr.Logical expr) {
+		Code left = compile(expr.left);
+		Code right = compile(expr.right);
+
+		// Implements short circuiting!
+		if (expr.operator.type == TokenType.OR) {
+			return in -> {
+				Object value = left.run(in);
+				return in.isTruthy(value) ? value : right.run(in);
+			};
+		}
+		return in -> { // AND
+			Object value = left.run(in);
+			return in.isTruthy(value) ? right.run(in) : value;
+		};
+	}
+
+	@Override
+	public Code visitUnaryExpr(Expr.Unary expr) {
+		Code right = compile(expr.right);
+		Token operator = expr.operator;
+
+		switch (operator.type) {
+			case MINUS:
+				return in -> {
+					Object value = right.run(in);
+					in.checkNumberOperand(operator, value);
+					return -(double) value;
+				};
+			case BANG:
+				return in -> !in.isTruthy(right.run(in));
+			default:
+				return in -> {
+					right.run(in);
+					return null;
+				};
+		}
+	}
+
+	//~ Calls
+
+	@Override
+	public Code visitCallExpr(Expr.Call expr) {
+		Code callee = compile(expr.callee);
+		Code[] arguments = compileAll(expr.arguments);
+		Token paren = expr.paren;
+
+		// Up to four arguments go to the callable's entry point for that many, so no list is made for them
+		switch (arguments.length) {
+			case 0:
+				return in -> in.callable(callee.run(in), paren, 0).call0(in);
+			case 1: {
+				Code a = arguments[0];
+				return in -> {
+					Object function = callee.run(in);
+					Object x = a.run(in);
+					return in.callable(function, paren, 1).call1(in, x);
+				};
+			}
+			case 2: {
+				Code a = arguments[0], b = arguments[1];
+				return in -> {
+					Object function = callee.run(in);
+					Object x = a.run(in), y = b.run(in);
+					return in.callable(function, paren, 2).call2(in, x, y);
+				};
+			}
+			case 3: {
+				Code a = arguments[0], b = arguments[1], c = arguments[2];
+				return in -> {
+					Object function = callee.run(in);
+					Object x = a.run(in), y = b.run(in), z = c.run(in);
+					return in.callable(function, paren, 3).call3(in, x, y, z);
+				};
+			}
+			case 4: {
+				Code a = arguments[0], b = arguments[1], c = arguments[2], d = arguments[3];
+				return in -> {
+					Object function = callee.run(in);
+					Object x = a.run(in), y = b.run(in), z = c.run(in), w = d.run(in);
+					return in.callable(function, paren, 4).call4(in, x, y, z, w);
+				};
+			}
+			default:
+				return in -> call(in, callee.run(in), paren, arguments);
+		}
+	}
+
+	//* Calls whatever a callee evaluated to, with any number of arguments.
+	private static Object call(Interpreter in, Object callee, Token paren, Code[] arguments) {
+		switch (arguments.length) {
+			case 0:
+				return in.callable(callee, paren, 0).call0(in);
+			case 1: {
+				Object x = arguments[0].run(in);
+				return in.callable(callee, paren, 1).call1(in, x);
+			}
+			case 2: {
+				Object x = arguments[0].run(in), y = arguments[1].run(in);
+				return in.callable(callee, paren, 2).call2(in, x, y);
+			}
+			case 3: {
+				Object x = arguments[0].run(in), y = arguments[1].run(in), z = arguments[2].run(in);
+				return in.callable(callee, paren, 3).call3(in, x, y, z);
+			}
+			case 4: {
+				Object x = arguments[0].run(in), y = arguments[1].run(in), z = arguments[2].run(in), w = arguments[3].run(in);
+				return in.callable(callee, paren, 4).call4(in, x, y, z, w);
+			}
+			default:
+				return in.callable(callee, paren, arguments.length).call(in, evaluate(in, arguments));
+		}
+	}
+
+	private static List<Object> evaluate(Interpreter in, Code[] arguments) {
+		List<Object> values = new ArrayList<>(arguments.length);
+		for (Code argument : arguments)
+			values.add(argument.run(in));
+		return values;
+	}
+
+	@Override
+	public Code visitInvokeExpr(Expr.Invoke expr) {
+		Code object = compile(expr.object);
+		Code[] arguments = compileAll(expr.arguments);
+		Token name = expr.name;
+		Token paren = expr.paren;
+		InlineCache cache = new InlineCache();
+		int count = arguments.length;
+
+		return in -> {
+			Object value = object.run(in);
+			if (!(value instanceof LoxInstance))
+				throw new RuntimeError(name, "Only instances have properties.");
+
+			LoxInstance instance = (LoxInstance) value;
+			LoxFunction method = cache.method(instance, name);
+			if (method == null) // A field, which could hold anything callable
+				return call(in, cache.get(instance, name), paren, arguments);
+
+			// Up to four arguments are passed as they are, and only more are collected into a list
+			Object a = null, b = null, c = null, d = null;
+			List<Object> list = null;
+			if (count > 4) {
+				list = evaluate(in, arguments);
+			} else {
+				if (count > 0)
+					a = arguments[0].run(in);
+				if (count > 1)
+					b = arguments[1].run(in);
+				if (count > 2)
+					c = arguments[2].run(in);
+				if (count > 3)
+					d = arguments[3].run(in);
+			}
+			in.checkArity(method, count, paren);
+			return method.call(in, instance, a, b, c, d, list); // The instance goes straight into the method's 'this' slot
+		};
+	}
+
+	//~ Properties
+
+	@Override
+	public Code visitGetExpr(Expr.Get expr) {
+		Code object = compile(expr.object);
+		Token name = expr.name;
+		InlineCache cache = new InlineCache();
+		return in -> {
+			Object value = object.run(in);
+			if (value instanceof LoxInstance)
+				return cache.get((LoxInstance) value, name);
+			throw new RuntimeError(name, "Only instances have properties.");
+		};
+	}
+
+	@Override
+	public Code visitSetExpr(Expr.Set expr) {
+		Code object = compile(expr.object);
+		Code value = compile(expr.value);
+		Token name = expr.name;
+		InlineCache cache = new InlineCache();
+		return in -> {
+			Object instance = object.run(in);
+			if (!(instance instanceof LoxInstance))
+				throw new RuntimeError(name, "Only instances have fields.");
+
+			Object result = value.run(in);
+			cache.set((LoxInstance) instance, name, result);
+			return result;
+		};
+	}
+
+	@Override
+	public Code visitSuperExpr(Expr.Super expr) {
+		return in -> in.visitSuperExpr(expr); // Caches its lookup on the node already
+	}
+}
@@ -0,0 +1,21 @@
+package com.craftinginterpreters.jlox;
+
+//* A compile error which was captured instead of printed. See Lox.capture().
+class Diagnostic {
+	//* The line number the error is on.
+	final int line;
+	//* Where on the line, e.g. " at 'x'" or " at end". Empty if unknown.
+	final String where;
+	final String message;
+
+	Diagnostic(int line, String where, String message) {
+		this.line = line;
+		this.where = where;
+		this.message = message;
+	}
+
+	@Override
+	public String toString() {
+		return "[line " + line + "] Error" + where + ": " + message;
+	}
+}
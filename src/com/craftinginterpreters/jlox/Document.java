@@ -0,0 +1,248 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//* The text of a file open in an editor, kept compiled as it is edited. Used by the LanguageServer.
+// The text is split into regions: runs of whole lines holding complete top-level declarations. A region is cut at
+// the end of a line which finishes a top-level statement, outside of any string or comment. Each region is scanned,
+// parsed and resolved by itself, which gives the same errors as compiling the whole file. Nothing at the top level
+// depends on what came before it.
+// An edit only recompiles the regions it touches, plus any after them which it swallows (an unclosed '{', say).
+// The regions after that are kept as they are and moved. Their errors are stored with lines counted from the start
+// of the region, so moving them is just a matter of changing where the region starts.
+class Document {
+	//* A run of lines compiled by itself.
+	private static class Region {
+		int start; // Char offset of the region in the text
+		int end;
+		int line; // Line the region starts on
+		List<Stmt> statements;
+		final List<Diagnostic> errors = new ArrayList<>(); // Lines counted from 1 at the region's first line
+
+		Region(int start, int end, int line) {
+			this.start = start;
+			this.end = end;
+			this.line = line;
+		}
+	}
+
+	private final StringBuilder text;
+	private List<Region> regions = new ArrayList<>();
+
+	Document(String text) {
+		this.text = new StringBuilder(text);
+		recompile(0, 1, this.text.length(), new ArrayList<>());
+	}
+
+	//~ Editing
+
+	//* Replaces the whole text.
+	void replace(String newText) {
+		text.setLength(0);
+		text.append(newText);
+		regions = new ArrayList<>();
+		recompile(0, 1, text.length(), new ArrayList<>());
+	}
+
+	//* Replaces a range of the text, given as 0-based lines and columns (as the language server protocol counts them).
+	void edit(int fromLine, int fromColumn, int toLine, int toColumn, String newText) {
+		int from = offset(fromLine, fromColumn);
+		int to = Math.max(from, offset(toLine, toColumn));
+		int lineDelta = newlines(newText, 0, newText.length()) - newlines(text, from, to);
+		int delta = newText.length() - (to - from);
+		text.replace(from, to, newText);
+
+		// The regions the edit touches. The one before too, in case the edit continues it (typing an 'else', say)
+		int first = Math.max(0, regionAt(from) - 1);
+		int last = regionAt(to);
+
+		int restart = regions.get(first).start;
+		int startLine = regions.get(first).line;
+		int oldEnd = regions.get(last).end + delta;
+
+		List<Region> after = new ArrayList<>(regions.subList(last + 1, regions.size()));
+		for (Region region : after) {
+			region.start += delta;
+			region.end += delta;
+			region.line += lineDelta;
+		}
+
+		regions = new ArrayList<>(regions.subList(0, first));
+		recompile(restart, startLine, oldEnd, after);
+	}
+
+	//* Compiles regions from a position until one ends where an untouched region starts, then keeps the rest.
+	private void recompile(int from, int line, int until, List<Region> after) {
+		int position = from;
+		int next = 0;
+		for (;;) {
+			if (position >= until) {
+				// Drop old regions this one swallowed, and stop if the next one starts right here
+				while (next < after.size() && after.get(next).start < position)
+					next++;
+				if (next < after.size() && after.get(next).start == position)
+					break;
+				if (position >= text.length())
+					break;
+			}
+
+			int end = regionEnd(text, position);
+			Region region = new Region(position, end, line);
+			compile(region);
+			regions.add(region);
+
+			line += newlines(text, position, end);
+			position = end;
+		}
+
+		regions.addAll(after.subList(next, after.size()));
+		if (regions.isEmpty())
+			regions.add(new Region(0, 0, 1)); // So there is always a region to find positions in
+	}
+
+	//* Scans, parses and resolves a region on its own.
+	private void compile(Region region) {
+		region.errors.clear();
+		region.statements = Lox.capture(region.errors, () -> {
+			Scanner scanner = new Scanner(text, region.start, region.end, 1);
+			List<Stmt> statements = new Parser(scanner.scanTokens()).parse();
+			if (region.errors.isEmpty()) {
+				// Only the errors are wanted. The depths stay on the region's nodes
+				new Resolver().resolve(statements);
+			}
+			return statements;
+		});
+	}
+
+	//~ Errors
+
+	//* Every error in the document, in order, with 1-based lines counted from the start of the file.
+	List<Diagnostic> errors() {
+		List<Diagnostic> errors = new ArrayList<>();
+		for (Region region : regions) {
+			for (Diagnostic error : region.errors)
+				errors.add(new Diagnostic(region.line + error.line - 1, error.where, error.message));
+		}
+		return errors;
+	}
+
+	//~ Positions
+
+	//* Turns a 0-based line and column into an offset in the text. Past the end of a line or the text is clamped.
+	int offset(int line, int column) {
+		Region region = regions.get(regionOnLine(line + 1));
+		int position = region.start;
+		for (int at = region.line; at < line + 1 && position < text.length(); position++) {
+			if (text.charAt(position) == '\n')
+				at++;
+		}
+
+		for (int i = 0; i < column && position < text.length() && text.charAt(position) != '\n'; i++)
+			position++;
+		return position;
+	}
+
+	//* Index of the last region starting at or before a 1-based line.
+	private int regionOnLine(int line) {
+		int low = 0;
+		int high = regions.size() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) / 2;
+			if (regions.get(middle).line <= line)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		return low;
+	}
+
+	//* Index of the last region starting at or before an offset.
+	private int regionAt(int position) {
+		int low = 0;
+		int high = regions.size() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) / 2;
+			if (regions.get(middle).start <= position)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		return low;
+	}
+
+	private static int newlines(CharSequence text, int from, int to) {
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			if (text.charAt(i) == '\n')
+				count++;
+		}
+		return count;
+	}
+
+	//~ Splitting
+
+	//* Finds the end of the region starting at a position: just after the first newline which follows a complete
+	// top-level statement, with nothing but comments in between. Skips strings and comments exactly as the Scanner does.
+	static int regionEnd(CharSequence text, int from) {
+		int length = text.length();
+		int depth = 0;
+		boolean ended = false; // Whether the last thing seen finished a top-level statement
+		int i = from;
+
+		while (i < length) {
+			char c = text.charAt(i++);
+			if (c == '\n') {
+				if (ended && !continues(text, i))
+					return i;
+			} else if (c == ' ' || c == '\r' || c == '\t') {
+				// Doesn't change anything
+			} else if (c == '"') {
+				while (i < length && text.charAt(i) != '"')
+					i++;
+				i++; // The closing "
+				ended = false;
+			} else if (c == '/' && i < length && text.charAt(i) == '/') {
+				while (i < length && text.charAt(i) != '\n')
+					i++;
+			} else if (c == '/' && i < length && text.charAt(i) == '*') {
+				i++;
+				// Same stopping rule as Scanner.scanToken()
+				while (i < length && text.charAt(i) != '*' && (i + 1 >= length || text.charAt(i + 1) != '/'))
+					i++;
+				i += 2; // The '*/'
+			} else if (c == '(' || c == '{') {
+				depth++;
+				ended = false;
+			} else if (c == ')' || c == '}') {
+				depth--;
+				ended = c == '}' && depth <= 0;
+			} else {
+				ended = c == ';' && depth <= 0;
+			}
+		}
+		return length;
+	}
+
+	//* Whether the text from a position carries on the statement before it. Only an 'else' can.
+	private static boolean continues(CharSequence text, int from) {
+		int i = from;
+		int length = text.length();
+		while (i < length) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '/' && i + 1 < length && text.charAt(i + 1) == '/') {
+				while (i < length && text.charAt(i) != '\n')
+					i++;
+			} else if (c == '/' && i + 1 < length && text.charAt(i + 1) == '*') {
+				return true; // A block comment could hide anything. Keep going to be safe
+			} else {
+				break;
+			}
+		}
+
+		return length >= i + 4 && text.subSequence(i, i + 4).toString().equals("else")
+				&& (i + 4 == length || !Character.isLetterOrDigit(text.charAt(i + 4)) && text.charAt(i + 4) != '_');
+	}
+}
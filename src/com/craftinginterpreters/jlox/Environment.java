@@ -3,68 +3,74 @@ package com.craftinginterpreters.jlox;
 import java.util.HashMap;
 import java.util.Map;
 
+//* The global variables. Locals don't need one of these: they live in frames, or in cells when captured (see Resolver).
 public class Environment {
-	final Environment enclosing;
-	private final Map<String, Object> values = new HashMap<>();
+	//* Global variables by name, each in its own cell. Globals aren't resolved, so they are found by name.
+	private final Map<String, Cell> cells = new HashMap<>();
 
-	//* Used for the global environment. There is no enclosing environment.
-	Environment() {
-		this.enclosing = null;
-	}
-
-	//* Used for the local environments.
-	Environment(Environment env) {
-		this.enclosing = env;
-	}
-
-	//* Defines a variable in the current environment.
+	//* Defines a global, or gives an existing one a new value.
 	void define(String name, Object value) {
-		values.put(name, value);
+		Cell cell = cell(name);
+		cell.value = value;
+		cell.defined = true;
 	}
 
-	//* Looks up a variable in the current environment. If it does not exist, a runtime error is thrown. Used for global env.
-	Object get(Token name) {
-		if (values.containsKey(name.lexeme)) {
-			return values.get(name.lexeme);
+	//* Returns the cell of a global, making an undefined one if there is none by that name yet.
+	Cell cell(String name) {
+		Cell cell = cells.get(name);
+		if (cell == null) {
+			cell = new Cell(this);
+			cells.put(name, cell);
 		}
-
-		if (enclosing != null)
-			return enclosing.get(name);
-
-		throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+		return cell;
 	}
 
-	//* Returns a variable at a specific distance from the current environment.
-	Object getAt(int distance, String name) {
-		return ancestor(distance).values.get(name);
+	//* Returns a global, or null if there is none by that name.
+	Object value(String name) {
+		Cell cell = cells.get(name);
+		return cell == null ? null : cell.value;
 	}
 
-	//* Assigns a value to a variable in the current environment. If it doesn't exist, a runtime error is thrown. Used for global env.
-	void assign(Token name, Object value) {
-		if (values.containsKey(name.lexeme)) {
-			values.put(name.lexeme, value);
-			return;
-		}
+	//* A variable which is shared rather than copied: a global, or a local captured by a closure.
+	//* Each site naming a global links to its cell the first time it runs, so later accesses skip the lookup by name.
+	//* A site can link to a global before it is declared, e.g. in a function declared first, so a global's cell starts
+	//* out undefined and only becomes usable once the declaration runs.
+	static final class Cell {
+		//* The global environment the cell is in. A site linked to another interpreter's globals has to link again.
+		//* Null for captured locals.
+		final Environment owner;
+		Object value = null;
+		boolean defined = false;
 
-		if (enclosing != null) {
-			enclosing.assign(name, value);
-			return;
+		Cell(Environment owner) {
+			this.owner = owner;
 		}
 
-		throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
-	}
+		//* Makes the cell for a captured local. It is defined from the start.
+		static Cell local(Object value) {
+			Cell cell = new Cell(null);
+			cell.value = value;
+			cell.defined = true;
+			return cell;
+		}
 
-	//* Assigns a value to a specific variable identified by a name and number of environments to skip.
-	void assignAt(int distance, Token name, Object value) {
-		ancestor(distance).values.put(name.lexeme, value);
-	}
+		//* Reads the global. If it has not been defined, a runtime error is thrown.
+		Object get(Token name) {
+			if (!defined)
+				throw undefined(name);
+			return value;
+		}
 
-	//* Returns an environment that is a specific distance away from the current environment.
-	Environment ancestor(int distance) {
-		Environment env = this;
-		for (int i = 0; i < distance; i++)
-			env = env.enclosing;
+		//* Assigns to the global. If it has not been defined, a runtime error is thrown.
+		void assign(Token name, Object value) {
+			if (!defined)
+				throw undefined(name);
+			this.value = value;
+		}
 
-		return env;
+		// Kept out of get() and assign() so they stay small enough to inline
+		private static RuntimeError undefined(Token name) {
+			return new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+		}
 	}
 }
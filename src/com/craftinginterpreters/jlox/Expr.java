@@ -9,6 +9,7 @@ abstract class Expr {
 		R visitCallExpr(Call expr);
 		R visitGetExpr(Get expr);
 		R visitGroupingExpr(Grouping expr);
+		R visitInvokeExpr(Invoke expr);
 		R visitLiteralExpr(Literal expr);
 		R visitLogicalExpr(Logical expr);
 		R visitSetExpr(Set expr);
@@ -21,6 +22,10 @@ abstract class Expr {
 	static class Assign extends Expr {
 		final Token name;
 		final Expr value;
+		// Filled in after parsing.
+		int location = 0;
+		int slot = 0;
+		Environment.Cell cell = null;
 
 		Assign(Token name, Expr value) {
 			this.name = name;
@@ -37,6 +42,8 @@ abstract class Expr {
 		final Expr left;
 		final Token operator;
 		final Expr right;
+		// Filled in after parsing.
+		int kind = 0;
 
 		Binary(Expr left, Token operator, Expr right) {
 			this.left = left;
@@ -70,6 +77,8 @@ abstract class Expr {
 	static class Get extends Expr {
 		final Expr object;
 		final Token name;
+		// Filled in after parsing.
+		InlineCache cache = null;
 
 		Get(Expr object, Token name) {
 			this.object = object;
@@ -95,6 +104,27 @@ abstract class Expr {
 		}
 	}
 
+	static class Invoke extends Expr {
+		final Expr object;
+		final Token name;
+		final Token paren;
+		final List<Expr> arguments;
+		// Filled in after parsing.
+		InlineCache cache = null;
+
+		Invoke(Expr object, Token name, Token paren, List<Expr> arguments) {
+			this.object = object;
+			this.name = name;
+			this.paren = paren;
+			this.arguments = arguments;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitInvokeExpr(this);
+		}
+	}
+
 	static class Literal extends Expr {
 		final Object value;
 
@@ -129,6 +159,8 @@ abstract class Expr {
 		final Expr object;
 		final Token name;
 		final Expr value;
+		// Filled in after parsing.
+		InlineCache cache = null;
 
 		Set(Expr object, Token name, Expr value) {
 			this.object = object;
@@ -145,6 +177,14 @@ abstract class Expr {
 	static class Super extends Expr {
 		final Token keyword;
 		final Token method;
+		// Filled in after parsing.
+		int location = 0;
+		int slot = 0;
+		int thisLocation = 0;
+		int thisSlot = 0;
+		LoxClass superclass = null;
+		LoxFunction target = null;
+		int generation = 0;
 
 		Super(Token keyword, Token method) {
 			this.keyword = keyword;
@@ -159,6 +199,9 @@ abstract class Expr {
 
 	static class This extends Expr {
 		final Token keyword;
+		// Filled in after parsing.
+		int location = 0;
+		int slot = 0;
 
 		This(Token keyword) {
 			this.keyword = keyword;
@@ -187,6 +230,10 @@ abstract class Expr {
 
 	static class Variable extends Expr {
 		final Token name;
+		// Filled in after parsing.
+		int location = 0;
+		int slot = 0;
+		Environment.Cell cell = null;
 
 		Variable(Token name) {
 			this.name = name;
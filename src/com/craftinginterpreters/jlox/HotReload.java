@@ -0,0 +1,110 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+//* Watches a running script and swaps its changed top-level functions and classes into the interpreter. Started with --watch.
+// The file is polled from a thread of its own. When it changes, it is split into regions the same way as a Document, and
+// only regions whose text is new are parsed and resolved. The functions and classes in them are handed to the
+// interpreter, which defines them in the globals at its next safepoint.
+// Nothing else in a changed region is run, so variables and instances keep their values. Declarations deleted from
+// the file stay defined. Declarations which only moved keep their old line numbers, since they aren't compiled again.
+class HotReload {
+	private static final long POLL_MILLIS = 200;
+
+	private final Path path;
+	private final Interpreter interpreter;
+	//* The text of every region of the file as the running program has it.
+	private Set<String> regions = new HashSet<>();
+	private FileTime modified;
+
+	HotReload(Path path, CharSequence source, Interpreter interpreter) throws IOException {
+		this.path = path;
+		this.interpreter = interpreter;
+		this.modified = Files.getLastModifiedTime(path);
+
+		for (int start = 0; start < source.length();) {
+			int end = Document.regionEnd(source, start);
+			regions.add(source.subSequence(start, end).toString());
+			start = end;
+		}
+	}
+
+	//* Starts watching. The thread doesn't keep the process alive once the script is done.
+	void start() {
+		Thread thread = new Thread(this::watch, "jlox-watch");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void watch() {
+		for (;;) {
+			try {
+				Thread.sleep(POLL_MILLIS);
+				FileTime time = Files.getLastModifiedTime(path);
+				if (!time.equals(modified)) {
+					modified = time;
+					check(new String(Files.readAllBytes(path), Charset.defaultCharset()));
+				}
+			} catch (IOException e) {
+				// Probably caught partway through a save. Try again on the next poll
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	//* Compiles the regions of the file which changed and queues their declarations. Does nothing if any have errors.
+	private void check(String text) {
+		Set<String> seen = new HashSet<>();
+		List<Stmt> declarations = new ArrayList<>();
+		List<Diagnostic> errors = new ArrayList<>();
+		int line = 1;
+
+		for (int start = 0; start < text.length();) {
+			int end = Document.regionEnd(text, start);
+			String region = text.substring(start, end);
+			seen.add(region);
+
+			if (!regions.contains(region)) {
+				int from = start;
+				int first = line;
+				Lox.capture(errors, () -> {
+					List<Stmt> statements = new Parser(new Scanner(text, from, end, first).scanTokens()).parse();
+					if (errors.isEmpty())
+						new Resolver().resolve(statements);
+					for (Stmt statement : statements) {
+						if (statement instanceof Stmt.Function || statement instanceof Stmt.Class)
+							declarations.add(statement);
+					}
+					return null;
+				});
+			}
+
+			for (int i = start; i < end; i++) {
+				if (text.charAt(i) == '\n')
+					line++;
+			}
+			start = end;
+		}
+
+		if (!errors.isEmpty()) {
+			// Report without marking the run as failed. The old code keeps going until the file is fixed
+			for (Diagnostic error : errors)
+				System.err.println(error);
+			System.err.println("Not reloading " + path + ".");
+			return;
+		}
+
+		regions = seen;
+		if (!declarations.isEmpty())
+			interpreter.reload(declarations);
+	}
+}
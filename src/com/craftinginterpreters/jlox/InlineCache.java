@@ -0,0 +1,120 @@
+package com.craftinginterpreters.jlox;
+
+//* The property lookups a Get or Set node has done, remembered by the shape of the instance they were done on.
+// Instances with the same shape have their fields in the same slots, and their class' methods, so a site which sees
+// a shape again skips straight to the slot or method. A site remembers a few shapes. Past that it is megamorphic and
+// only new lookups are done. Instances which have left shapes for a map of fields (see LoxInstance) aren't cached.
+class InlineCache {
+	//* How many shapes a site remembers.
+	static final int SIZE = 4;
+
+	//* Whether to count hits and misses. Off unless asked for, since every lookup would pay for it.
+	static boolean counting = false;
+	static long hits = 0;
+	static long misses = 0;
+	static long megamorphic = 0; // Sites which ran out of room
+
+	private final Shape[] shapes = new Shape[SIZE];
+	//* For each shape, the slot of the field. For a Get of a method, -1 and the method. For a Set which adds a field,
+	//* the slot it goes in and the shape the instance moves on to.
+	private final int[] slots = new int[SIZE];
+	private final LoxFunction[] methods = new LoxFunction[SIZE];
+	private final Shape[] next = new Shape[SIZE];
+	private int count = 0;
+	private boolean full = false;
+	//* The class redefinitions count the methods were found at. Hot reload can change them, not the fields.
+	private int generation = LoxClass.redefinitions;
+
+	//* Gets a property of an instance.
+	Object get(LoxInstance instance, Token name) {
+		int entry = entry(instance, name);
+		if (entry == -1)
+			return instance.get(name);
+		return methods[entry] == null ? instance.value(slots[entry]) : methods[entry].bind(instance);
+	}
+
+	//* Finds a property of an instance which is about to be called. Returns the method without binding it to the
+	//* instance, or null if the property is a field, which get() then reads.
+	LoxFunction method(LoxInstance instance, Token name) {
+		int entry = entry(instance, name);
+		if (entry == -1)
+			return instance.method(name);
+		return methods[entry];
+	}
+
+	//* Returns the entry for the instance's shape, adding one if there is room. Returns -1 for no entry, which is also
+	//* what a property the instance doesn't have gets, leaving the error to the lookup by name.
+	private int entry(LoxInstance instance, Token name) {
+		Shape shape = instance.shape();
+		if (generation != LoxClass.redefinitions) { // A class was reloaded, so start over
+			count = 0;
+			full = false;
+			generation = LoxClass.redefinitions;
+		}
+
+		for (int i = 0; i < count; i++) {
+			if (shapes[i] == shape) {
+				if (counting)
+					hits++;
+				return i;
+			}
+		}
+
+		if (counting)
+			misses++;
+		if (shape == null)
+			return -1;
+		int slot = shape.slot(name.lexeme);
+		LoxFunction method = slot == -1 ? instance.klass().findMethod(name.lexeme) : null;
+		if ((slot == -1 && method == null) || !room())
+			return -1;
+
+		shapes[count] = shape;
+		slots[count] = slot;
+		methods[count] = method;
+		return count++;
+	}
+
+	//* Sets a field of an instance.
+	void set(LoxInstance instance, Token name, Object value) {
+		Shape shape = instance.shape();
+		for (int i = 0; i < count; i++) {
+			if (shapes[i] == shape) {
+				if (counting)
+					hits++;
+				instance.put(slots[i], next[i], value);
+				return;
+			}
+		}
+
+		if (counting)
+			misses++;
+		int slot = shape == null ? -1 : shape.slot(name.lexeme);
+		if (slot == -1 && shape != null)
+			slot = shape.size(); // A new field goes in the next slot
+		instance.set(name, value);
+		if (shape != null && instance.shape() != null && room()) {
+			shapes[count] = shape;
+			slots[count] = slot;
+			next[count] = instance.shape();
+			count++;
+		}
+	}
+
+	//* Whether there is room for another shape. The first time there isn't, the site is counted as megamorphic.
+	private boolean room() {
+		if (count < SIZE)
+			return true;
+		if (!full && counting)
+			megamorphic++;
+		full = true;
+		return false;
+	}
+
+	//* Summary of the counts, for --ic-stats.
+	static String report() {
+		long total = hits + misses;
+		return "Inline caches: " + hits + " hits, " + misses + " misses (" +
+				(total == 0 ? 0 : hits * 100 / total) + "% hit), " + megamorphic + " megamorphic sites";
+	}
+}
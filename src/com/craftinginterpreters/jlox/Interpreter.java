@@ -1,17 +1,35 @@
 package com.craftinginterpreters.jlox;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+	private static final Environment.Cell[] NO_CAPTURES = new Environment.Cell[0];
+
 	//* Top level environment. Stays fixed for the interpreter.
 	final Environment globals = new Environment();
-	//* Current environment for the interpreter. Starts with the global environment.
-	private Environment environment = globals;
-	//* Associates an AST node with the results of the resolver (how many environments to peel back to find the variable)
-	private final Map<Expr, Integer> locals = new HashMap<>();
+	//* Every module imported so far.
+	final Modules modules = new Modules();
+	//* Declarations waiting to be swapped in at the next safepoint. Filled by a HotReload on its own thread.
+	private final List<Stmt> reloads = new ArrayList<>();
+	private volatile boolean reloadPending = false;
+	//* Frames of the calls in progress, one after another. They hold every local (see Resolver).
+	// One array serves every call, so a call whose variables aren't captured allocates nothing for them.
+	private Object[] stack = new Object[256];
+	//* Where the running call's frame starts, and the first slot past the last frame.
+	private int frame = 0;
+	private int top = 0;
+	//* The cells the running closure captured. Null at the top level.
+	private Environment.Cell[] captures = null;
+	//* Set by a return statement until the call it returns from picks up the value. Blocks and loops stop running
+	//* statements while it is set, so the value gets back to the call without throwing anything.
+	private boolean returning = false;
+	private Object returnValue = null;
+	//* When set, statements are compiled into closures and those are run instead of walking the tree (see ClosureCompiler).
+	ClosureCompiler compiler = null;
 
 	Interpreter() {
 		// Create a native function with a Java anonymous class
@@ -21,6 +39,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 			@Override
 			public Object call(Interpreter interpreter, List<Object> arguments) {
+				return call0(interpreter);
+			}
+
+			@Override
+			public Object call0(Interpreter interpreter) {
 				return (double) System.currentTimeMillis() / 1000.0; // Retuns the current time in seconds.
 			}
 		});
@@ -30,7 +53,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	public void interpret(List<Stmt> statements) {
 		try {
 			for (Stmt statement : statements) {
-				execute(statement);
+				safepoint();
+				if (compiler != null)
+					compiler.compile(statement).run(this);
+				else
+					execute(statement);
 			}
 		} catch (RuntimeError error) {
 			Lox.runtimeError(error);
@@ -47,11 +74,6 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		statement.accept(this);
 	}
 
-	//* Tells the interpreter how many environments to skip to get to the desired variable.
-	void resolve(Expr expr, int depth) {
-		locals.put(expr, depth);
-	}
-
 	//~ Statement Evaluation
 
 	@Override
@@ -69,6 +91,12 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		modules.load(stmt, this);
+		return null;
+	}
+
 	@Override
 	public Void visitVarStmt(Stmt.Var stmt) {
 		Object value = null;
@@ -76,19 +104,30 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			value = evaluate(stmt.initializer);
 		}
 
-		environment.define(stmt.name.lexeme, value);
+		define(stmt.location, stmt.slot, stmt.name, value);
 		return null;
 	}
 
 	@Override
 	public Void visitBlockStmt(Stmt.Block stmt) {
-		executeBlock(stmt.statements, new Environment(environment));
+		if (stmt.frameSize == 0) { // Its variables go in the running call's frame
+			executeBlock(stmt.statements);
+			return null;
+		}
+
+		// An outermost block outside of any function has a frame of its own
+		int caller = pushFrame(stmt.frameSize);
+		try {
+			executeBlock(stmt.statements);
+		} finally {
+			popFrame(caller);
+		}
 		return null;
 	}
 
 	@Override
 	public Void visitIfStmt(Stmt.If stmt) {
-		if (isTruthy(evaluate(stmt.condition))) {
+		if (condition(stmt.condition)) {
 			execute(stmt.thenBranch);
 		} else if (stmt.elseBranch != null) {
 			execute(stmt.elseBranch);
@@ -98,8 +137,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitWhileStmt(Stmt.While stmt) {
-		while (isTruthy(evaluate(stmt.condition))) {
+		while (condition(stmt.condition)) {
 			execute(stmt.body);
+			if (returning)
+				break;
+			safepoint();
 		}
 
 		return null;
@@ -107,8 +149,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	
 	@Override
 	public Void visitFunctionStmt(Stmt.Function stmt) {
-		LoxFunction function = new LoxFunction(stmt, environment, false); // Save the environment which declares the function, not calls
-		environment.define(stmt.name.lexeme, function);
+		// A function which refers to itself captures its own variable, so that has to exist before the closure is made
+		Environment.Cell cell = stmt.location == Resolver.BOXED ? box(stmt.slot, null) : null;
+		LoxFunction function = new LoxFunction(stmt, capture(stmt.captures), null); // Save the cells around the declaration, not the call
+		if (cell != null)
+			cell.value = function;
+		else
+			define(stmt.location, stmt.slot, stmt.name, function);
 		return null;
 	}
 
@@ -119,7 +166,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			value = evaluate(stmt.value);
 		}
 
-		throw new Return(value);
+		returnWith(value);
+		return null;
 	}
 
 	@Override
@@ -131,27 +179,23 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 				throw new RuntimeError(stmt.superclass.name, "Superclass must be a class.");
 		}
 
-		environment.define(stmt.name.lexeme, null); // Put ourselves into the environment so we can call ourself
-
-		if (stmt.superclass != null) {
-			environment = new Environment(environment); // b/c we added a scope in the resolver, we need this new scope to insert super
-			environment.define("super", superclass);
-		}
+		// Methods which refer to the class by name capture its variable, so that has to exist before they are made
+		Environment.Cell cell = stmt.location == Resolver.BOXED ? box(stmt.slot, null) : null;
 
 		Map<String, LoxFunction> methods = new HashMap<>();
 		for (Stmt.Function method : stmt.methods) {
-			LoxFunction function = new LoxFunction(method, environment, method.name.lexeme.equals("init")); // No anonymous functions in classes, so method.name is guarenteed
+			// Each method gets the superclass for its 'super' slot when it is called
+			LoxFunction function = new LoxFunction(method, capture(method.captures), (LoxClass) superclass);
 			methods.put(method.name.lexeme, function);
 		}
 
 		LoxClass klass = new LoxClass(stmt.name.lexeme, (LoxClass) superclass, methods);
 
-		// Don't want to assign into the 'super' scope, so remove it
-		if (stmt.superclass != null) {
-			environment = environment.enclosing;
-		}
-
-		environment.assign(stmt.name, klass); // By splitting, methods can refer to eachother
+		// Methods can only run once the class is defined, so they can still refer to it (and each other) by name.
+		if (cell != null)
+			cell.value = klass;
+		else
+			define(stmt.location, stmt.slot, stmt.name, klass);
 
 		return null;
 	}
@@ -160,11 +204,15 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Object visitSuperExpr(Expr.Super expr) {
-		int distance = locals.get(expr); // Find where the super is at
-		LoxClass superclass = (LoxClass) environment.getAt(distance, "super"); // Get the super
-		LoxInstance object = (LoxInstance) environment.getAt(distance - 1, "this"); // Get the object that called the super
-		// ^ works b/c we made a 1 env difference between the 'super' and 'this' scope in the resolver
-		LoxFunction method = superclass.findMethod(expr.method.lexeme); // Find the method in the super
+		LoxClass superclass = (LoxClass) lookUpVariable(expr.location, expr.slot); // Get the super. A slot of the method's frame
+		LoxInstance object = (LoxInstance) lookUpVariable(expr.thisLocation, expr.thisSlot); // Get the object that called the super
+		LoxFunction method = expr.target; // Find the method in the super, unless this site already did
+		if (expr.superclass != superclass || expr.generation != LoxClass.redefinitions) {
+			method = superclass.findMethod(expr.method.lexeme);
+			expr.superclass = superclass;
+			expr.target = method;
+			expr.generation = LoxClass.redefinitions;
+		}
 
 		if (method == null)
 			throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
@@ -174,57 +222,43 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Object visitBinaryExpr(Expr.Binary expr) {
-		Object left = evaluate(expr.left);
-		Object right = evaluate(expr.right);
-
-		switch (expr.operator.type) {
-			case MINUS:
-				checkNumberOperands(expr.operator, left, right);
-				return (double) left - (double) right;
-			case SLASH:
-				checkNumberOperands(expr.operator, left, right);
-				return (double) left / (double) right;
-			case STAR:
-				checkNumberOperands(expr.operator, left, right);
-				return (double) left * (double) right;
-
-			// Mathematical addition and string concatenation
-			case PLUS:
-				if (left instanceof Double && right instanceof Double) {
-					return (double) left + (double) right;
+		switch (expr.kind) {
+			case ADD_NUMBERS:
+			case SUBTRACT:
+			case MULTIPLY:
+			case DIVIDE:
+				try {
+					return arithmetic(expr); // Only the final result is boxed
+				} catch (NotANumber result) {
+					return result.value;
 				}
-
-				if (left instanceof String && right instanceof String) {
-					return (String) left + (String) right;
-				}
-
-				throw new RuntimeError(expr.operator, "Operands must either be 2 numbers or 2 strings.");
-
 			case LESSER:
-				checkNumberOperands(expr.operator, left, right);
-				return (double) left < (double) right;
 			case GREATER:
-				checkNumberOperands(expr.operator, left, right);
-				return (double) left > (double) right;
 			case LESSER_EQUAL:
-				checkNumberOperands(expr.operator, left, right);
-				return (double) left <= (double) right;
 			case GREATER_EQUAL:
-				checkNumberOperands(expr.operator, left, right);
-				return (double) left >= (double) right;
-
-			case EQUAL_EQUAL:
-				return isEqual(left, right);
-			case BANG_EQUAL:
-				return !isEqual(left, right);
-
-			default:
-				break;
+				return comparison(expr);
+			case ADD_STRINGS: {
+				Object left = evaluate(expr.left);
+				Object right = evaluate(expr.right);
+				if (left instanceof String && right instanceof String)
+					return (String) left + (String) right;
+				return generalize(expr, left, right);
+			}
+			case EQUAL:
+				return isEqual(evaluate(expr.left), evaluate(expr.right));
+			case NOT_EQUAL:
+				return !isEqual(evaluate(expr.left), evaluate(expr.right));
+			case GENERIC:
+				return binary(expr, evaluate(expr.left), evaluate(expr.right));
+			default: { // First run, so specialize on what the operands turn out to be
+				Object left = evaluate(expr.left);
+				Object right = evaluate(expr.right);
+				expr.kind = specialize(expr.operator.type, left, right);
+				return binary(expr, left, right);
+			}
 		}
-
-		return null;
 	}
-	
+
 	@Override
 	public Object visitLogicalExpr(Expr.Logical expr) {
 		// Implements short circuiting!
@@ -253,76 +287,92 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	
 	@Override
 	public Object visitUnaryExpr(Expr.Unary expr) {
-		Object right = evaluate(expr.right);
-
-		switch (expr.operator.type) {
-			case MINUS:
-				checkNumberOperand(expr.operator, right);
-				return -(double) right; // b/c lox is dynamically typed, we don't know if this cast will work or not
-			case BANG:
-				return !isTruthy(right);
-			default:
-				break;
-		}
-
-		return null;
+		if (expr.operator.type == TokenType.MINUS)
+			return negation(expr);
+		return !condition(expr.right);
 	}
 
 	@Override
 	public Object visitVariableExpr(Expr.Variable expr) {
-		// return environment.get(expr.name);
-		return lookUpVariable(expr.name, expr);
+		if (expr.location == Resolver.GLOBAL) {
+			Environment.Cell cell = expr.cell;
+			if (cell == null || cell.owner != globals) // Link the site to its global the first time it runs
+				cell = expr.cell = globals.cell(expr.name.lexeme);
+			return cell.get(expr.name);
+		}
+		return lookUpVariable(expr.location, expr.slot);
 	}
 
 	@Override
 	public Object visitThisExpr(Expr.This expr) {
-		// return environment.get(expr.name);
-		return lookUpVariable(expr.keyword, expr);
+		return lookUpVariable(expr.location, expr.slot);
 	}
 
 	@Override
 	public Object visitAssignExpr(Expr.Assign expr) {
 		Object value = evaluate(expr.value);
 
-		Integer distance = locals.get(expr);
-		if (distance != null) {
-			environment.assignAt(distance, expr.name, value);
+		if (expr.location == Resolver.LOCAL) {
+			stack[frame + expr.slot] = value;
+		} else if (expr.location == Resolver.BOXED) {
+			((Environment.Cell) stack[frame + expr.slot]).value = value;
+		} else if (expr.location == Resolver.CAPTURED) {
+			captures[expr.slot].value = value;
 		} else {
-			globals.assign(expr.name, value);
+			Environment.Cell cell = expr.cell;
+			if (cell == null || cell.owner != globals)
+				cell = expr.cell = globals.cell(expr.name.lexeme);
+			cell.assign(expr.name, value);
 		}
 		return value;
 	}
 
 	@Override
 	public Object visitCallExpr(Expr.Call expr) {
-		Object callee = evaluate(expr.callee);
-
-		List<Object> arguments = new ArrayList<>();
-		for (Expr argument : expr.arguments) {
-			arguments.add(evaluate(argument));
-		}
-
-		// Protect against non-callables being called, like 3.14() or "hello"()
-		if (!(callee instanceof LoxCallable)) {
-			throw new RuntimeError(expr.paren, "Can only call functions and classes");
-		}
-
-		LoxCallable function = (LoxCallable) callee; // Cast to a callable and then invoke call. All callables are implement LoxCallable
+		return call(evaluate(expr.callee), expr.paren, expr.arguments);
+	}
 
-		// Check function arity. Raise error if not enough/ too many are passed
-		if (arguments.size() < function.arity()) {
-			throw new RuntimeError(expr.paren,
-					"Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
+	@Override
+	public Object visitInvokeExpr(Expr.Invoke expr) {
+		Object object = evaluate(expr.object);
+		if (!(object instanceof LoxInstance))
+			throw new RuntimeError(expr.name, "Only instances have properties.");
+
+		LoxInstance instance = (LoxInstance) object;
+		if (expr.cache == null)
+			expr.cache = new InlineCache();
+		LoxFunction method = expr.cache.method(instance, expr.name);
+		if (method == null) // A field, which could hold anything callable
+			return call(expr.cache.get(instance, expr.name), expr.paren, expr.arguments);
+
+		// Up to four arguments are passed as they are, and only more are collected into a list
+		List<Expr> argumentExprs = expr.arguments;
+		int count = argumentExprs.size();
+		Object a = null, b = null, c = null, d = null;
+		List<Object> arguments = null;
+		if (count > 4) {
+			arguments = evaluate(argumentExprs);
+		} else {
+			if (count > 0)
+				a = evaluate(argumentExprs.get(0));
+			if (count > 1)
+				b = evaluate(argumentExprs.get(1));
+			if (count > 2)
+				c = evaluate(argumentExprs.get(2));
+			if (count > 3)
+				d = evaluate(argumentExprs.get(3));
 		}
-
-		return function.call(this, arguments); // Simply return whatever the call() returns
+		checkArity(method, count, expr.paren);
+		return method.call(this, instance, a, b, c, d, arguments); // The instance goes straight into the method's 'this' slot
 	}
 	
 	@Override
 	public Object visitGetExpr(Expr.Get expr) {
 		Object object = evaluate(expr.object); // What object are we getting from?
 		if (object instanceof LoxInstance) {
-			return ((LoxInstance) object).get(expr.name);
+			if (expr.cache == null) // Made the first time the site runs, as many never do
+				expr.cache = new InlineCache();
+			return expr.cache.get((LoxInstance) object, expr.name);
 		}
 
 		throw new RuntimeError(expr.name, "Only instances have properties.");
@@ -337,39 +387,479 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		}
 
 		Object value = evaluate(expr.value);
-		((LoxInstance) object).set(expr.name, value);
+		if (expr.cache == null)
+			expr.cache = new InlineCache();
+		expr.cache.set((LoxInstance) object, expr.name, value);
 		return value;
 	}
 	
-	//~ Helper Functions
+	//~ Specialization
+
+	// What Binary nodes turn into. Each starts out unspecialized, and its first run picks a kind for its operator and
+	// the types its operands had. Later runs go straight to that kind's code, which checks the types still hold. A node
+	// whose operands change type falls back to the generic kind for good.
+	// Unary and Logical nodes aren't specialized: their operator alone decides their code. Negation is still unboxed
+	// inside arithmetic, and the logic on comparisons doesn't make Booleans (see number() and condition()).
+	private static final int UNSPECIALIZED = 0, GENERIC = 1;
+	private static final int ADD_NUMBERS = 2, SUBTRACT = 3, MULTIPLY = 4, DIVIDE = 5; // Arithmetic, in this order
+	private static final int LESSER = 6, GREATER = 7, LESSER_EQUAL = 8, GREATER_EQUAL = 9; // Comparisons, likewise
+	private static final int ADD_STRINGS = 10, EQUAL = 11, NOT_EQUAL = 12;
+
+	//* Thrown by number() when an expression doesn't give a number after all, with what it gave. Rare, since the
+	//* node it comes from generalizes on the way, so nothing is spent on a stack trace.
+	private static final class NotANumber extends RuntimeException {
+		final Object value;
+
+		NotANumber(Object value) {
+			super(null, null, false, false);
+			this.value = value;
+		}
+	}
+
+	//* Picks the kind of a binary node from its operator and the operands it first saw.
+	private static int specialize(TokenType operator, Object left, Object right) {
+		boolean numbers = left instanceof Double && right instanceof Double;
+		switch (operator) {
+			case PLUS:
+				if (numbers)
+					return ADD_NUMBERS;
+				return left instanceof String && right instanceof String ? ADD_STRINGS : GENERIC;
+			case MINUS:
+				return numbers ? SUBTRACT : GENERIC;
+			case STAR:
+				return numbers ? MULTIPLY : GENERIC;
+			case SLASH:
+				return numbers ? DIVIDE : GENERIC;
+			case LESSER:
+				return numbers ? LESSER : GENERIC;
+			case GREATER:
+				return numbers ? GREATER : GENERIC;
+			case LESSER_EQUAL:
+				return numbers ? LESSER_EQUAL : GENERIC;
+			case GREATER_EQUAL:
+				return numbers ? GREATER_EQUAL : GENERIC;
+			case EQUAL_EQUAL:
+				return EQUAL; // Works on anything, so there is nothing to check
+			case BANG_EQUAL:
+				return NOT_EQUAL;
+			default:
+				return GENERIC;
+		}
+	}
+
+	//* Evaluates an expression expected to give a number. Arithmetic nodes on numbers hand back their result without
+	//* boxing it, so nested arithmetic only boxes at the end. Throws NotANumber if the value isn't a number after all.
+	private double number(Expr expr) {
+		if (expr instanceof Expr.Binary) {
+			Expr.Binary binary = (Expr.Binary) expr;
+			if (binary.kind >= ADD_NUMBERS && binary.kind <= DIVIDE)
+				return arithmetic(binary);
+		} else if (expr instanceof Expr.Grouping) {
+			return number(((Expr.Grouping) expr).expression);
+		} else if (expr instanceof Expr.Unary && ((Expr.Unary) expr).operator.type == TokenType.MINUS) {
+			return negation((Expr.Unary) expr);
+		}
+
+		Object value;
+		if (expr instanceof Expr.Variable && ((Expr.Variable) expr).location == Resolver.LOCAL) // The usual operand
+			value = stack[frame + ((Expr.Variable) expr).slot];
+		else if (expr instanceof Expr.Literal)
+			value = ((Expr.Literal) expr).value;
+		else
+			value = evaluate(expr);
+		if (value instanceof Double)
+			return (double) value;
+		throw new NotANumber(value);
+	}
+
+	//* Runs an arithmetic node on numbers. If an operand isn't one, the node generalizes and the generic result is
+	//* thrown in a NotANumber, since it can't be a number either.
+	private double arithmetic(Expr.Binary expr) {
+		double left;
+		try {
+			left = number(expr.left);
+		} catch (NotANumber operand) {
+			throw new NotANumber(generalize(expr, operand.value, evaluate(expr.right)));
+		}
 
-	//* Evaluates all statements in a a block.
-	public void executeBlock(List<Stmt> statements, Environment environment) {
-		Environment previous = this.environment;
+		double right;
 		try {
-			this.environment = environment;
+			right = number(expr.right);
+		} catch (NotANumber operand) {
+			throw new NotANumber(generalize(expr, left, operand.value));
+		}
 
-			for (Stmt statement : statements) {
-				execute(statement);
+		switch (expr.kind) {
+			case ADD_NUMBERS:
+				return left + right;
+			case SUBTRACT:
+				return left - right;
+			case MULTIPLY:
+				return left * right;
+			default:
+				return left / right;
+		}
+	}
+
+	//* Runs a comparison node on numbers. Comparing anything else is an error, which generalizing reports.
+	private boolean comparison(Expr.Binary expr) {
+		double left;
+		try {
+			left = number(expr.left);
+		} catch (NotANumber operand) {
+			return (boolean) generalize(expr, operand.value, evaluate(expr.right));
+		}
+
+		double right;
+		try {
+			right = number(expr.right);
+		} catch (NotANumber operand) {
+			return (boolean) generalize(expr, left, operand.value);
+		}
+
+		switch (expr.kind) {
+			case LESSER:
+				return left < right;
+			case GREATER:
+				return left > right;
+			case LESSER_EQUAL:
+				return left <= right;
+			default:
+				return left >= right;
+		}
+	}
+
+	//* Runs a negation. Negating anything but a number is an error, which the generic code reports.
+	private double negation(Expr.Unary expr) {
+		try {
+			return -number(expr.right);
+		} catch (NotANumber operand) {
+			checkNumberOperand(expr.operator, operand.value);
+			throw operand; // Not reached, as the check throws
+		}
+	}
+
+	//* Evaluates an expression for whether it is truthy. Comparisons and the logic on them needn't make a Boolean.
+	private boolean condition(Expr expr) {
+		if (expr instanceof Expr.Binary) {
+			Expr.Binary binary = (Expr.Binary) expr;
+			if (binary.kind >= LESSER && binary.kind <= GREATER_EQUAL)
+				return comparison(binary);
+		} else if (expr instanceof Expr.Logical) {
+			Expr.Logical logical = (Expr.Logical) expr;
+			if (logical.operator.type == TokenType.AND) // Only truthiness matters here, so the operand given back needn't be
+				return condition(logical.left) && condition(logical.right);
+			return condition(logical.left) || condition(logical.right);
+		}
+		return isTruthy(evaluate(expr));
+	}
+
+	//* Falls back to the generic code for a node whose operands weren't what it specialized on, for good.
+	private Object generalize(Expr.Binary expr, Object left, Object right) {
+		expr.kind = GENERIC;
+		return binary(expr, left, right);
+	}
+
+	//* Runs a binary operator on any operands, checking their types.
+	private Object binary(Expr.Binary expr, Object left, Object right) {
+		switch (expr.operator.type) {
+			case MINUS:
+				checkNumberOperands(expr.operator, left, right);
+				return (double) left - (double) right;
+			case SLASH:
+				checkNumberOperands(expr.operator, left, right);
+				return (double) left / (double) right;
+			case STAR:
+				checkNumberOperands(expr.operator, left, right);
+				return (double) left * (double) right;
+
+			// Mathematical addition and string concatenation
+			case PLUS:
+				if (left instanceof Double && right instanceof Double) {
+					return (double) left + (double) right;
+				}
+
+				if (left instanceof String && right instanceof String) {
+					return (String) left + (String) right;
+				}
+
+				throw new RuntimeError(expr.operator, "Operands must either be 2 numbers or 2 strings.");
+
+			case LESSER:
+				checkNumberOperands(expr.operator, left, right);
+				return (double) left < (double) right;
+			case GREATER:
+				checkNumberOperands(expr.operator, left, right);
+				return (double) left > (double) right;
+			case LESSER_EQUAL:
+				checkNumberOperands(expr.operator, left, right);
+				return (double) left <= (double) right;
+			case GREATER_EQUAL:
+				checkNumberOperands(expr.operator, left, right);
+				return (double) left >= (double) right;
+
+			case EQUAL_EQUAL:
+				return isEqual(left, right);
+			case BANG_EQUAL:
+				return !isEqual(left, right);
+
+			default:
+				break;
+		}
+
+		return null;
+	}
+
+	//~ Hot Reloading
+
+	//* Queues new versions of top-level functions and classes. Safe to call from any thread.
+	void reload(List<Stmt> declarations) {
+		synchronized (reloads) {
+			reloads.addAll(declarations);
+			reloadPending = true;
+		}
+	}
+
+	//* Swaps in queued declarations. Called between top-level statements and loop iterations, so a function which is
+	// already running carries on with its old body until it returns.
+	void safepoint() {
+		if (!reloadPending)
+			return;
+
+		List<Stmt> declarations;
+		synchronized (reloads) {
+			declarations = new ArrayList<>(reloads);
+			reloads.clear();
+			reloadPending = false;
+		}
+
+		try {
+			for (Stmt declaration : declarations) {
+				if (!(declaration instanceof Stmt.Class)) {
+					execute(declaration);
+					continue;
+				}
+
+				// Update the class in place, so existing instances and subclasses see the new methods
+				String name = ((Stmt.Class) declaration).name.lexeme;
+				Object old = globals.value(name);
+				execute(declaration);
+				if (old instanceof LoxClass) {
+					((LoxClass) old).redefine((LoxClass) globals.value(name));
+					globals.define(name, old);
+				}
+			}
+		} catch (RuntimeError error) {
+			// Keep running the old code rather than stop the program
+			System.err.println("Reload failed: " + error.getMessage() + "\n[line " + error.token.line + "]");
+		}
+	}
+
+	//~ Frames
+
+	//* Starts a frame for a call with room for its locals. Returns the caller's frame, to give to popFrame().
+	int pushFrame(int size) {
+		int caller = frame;
+		frame = top;
+		top += size;
+		if (top > stack.length)
+			stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top));
+		return caller;
+	}
+
+	//* Ends the running call's frame and goes back to the caller's.
+	void popFrame(int caller) {
+		Arrays.fill(stack, frame, top, null); // So the values can be collected
+		top = frame;
+		frame = caller;
+	}
+
+	//* Reads a slot in the running call's frame.
+	Object getLocal(int slot) {
+		return stack[frame + slot];
+	}
+
+	//* Sets a slot in the running call's frame.
+	void setLocal(int slot, Object value) {
+		stack[frame + slot] = value;
+	}
+
+	//* Moves the value in a slot of the running call's frame into a new cell, for closures to share.
+	void box(int slot) {
+		stack[frame + slot] = Environment.Cell.local(stack[frame + slot]);
+	}
+
+	//* Makes the cell for a captured local in a slot of the running call's frame.
+	Environment.Cell box(int slot, Object value) {
+		Environment.Cell cell = Environment.Cell.local(value);
+		stack[frame + slot] = cell;
+		return cell;
+	}
+
+	//* The cell of a captured local, in a slot of the running call's frame.
+	Environment.Cell cellAt(int slot) {
+		return (Environment.Cell) stack[frame + slot];
+	}
+
+	//* One of the cells the running closure captured.
+	Environment.Cell captured(int index) {
+		return captures[index];
+	}
+
+	//* Switches to the cells a closure captured, for the length of its call. Returns the caller's, to switch back to.
+	Environment.Cell[] enterClosure(Environment.Cell[] captured) {
+		Environment.Cell[] caller = captures;
+		captures = captured;
+		return caller;
+	}
+
+	//* Collects the cells a function being declared captures. See Resolver.Frame for what the sources mean.
+	private Environment.Cell[] capture(int[] sources) {
+		if (sources == null || sources.length == 0)
+			return NO_CAPTURES;
+
+		Environment.Cell[] cells = new Environment.Cell[sources.length];
+		for (int i = 0; i < sources.length; i++) {
+			int source = sources[i];
+			cells[i] = source >= 0 ? (Environment.Cell) stack[frame + source] : captures[-1 - source];
+		}
+		return cells;
+	}
+
+	//~ Helper Functions
+
+	//* Defines a declared variable where the resolver put it: a frame slot, a new cell in one, or the globals.
+	private void define(int location, int slot, Token name, Object value) {
+		if (location == Resolver.LOCAL)
+			stack[frame + slot] = value;
+		else if (location == Resolver.BOXED)
+			box(slot, value);
+		else
+			globals.define(name.lexeme, value);
+	}
+
+	//* Evaluates all statements in a a block, in the running call's frame.
+	//* Blocks run once per loop iteration, so this indexes rather than making an iterator each time.
+	public void executeBlock(List<Stmt> statements) {
+		for (int i = 0; i < statements.size(); i++) {
+			execute(statements.get(i));
+			if (returning) // Skip the rest, on the way back to the call
+				return;
+		}
+	}
+
+	//* Runs the body of a function being called, in its frame. With a compiler, the body is compiled on its first call.
+	void executeBody(Stmt.Function function) {
+		if (compiler == null) {
+			executeBlock(function.body);
+			return;
+		}
+		if (function.compiled == null)
+			function.compiled = compiler.compile(function.body);
+		function.compiled.run(this);
+	}
+
+	//* Signals a return, which blocks and loops stop for on the way back to the call.
+	void returnWith(Object value) {
+		returnValue = value;
+		returning = true;
+	}
+
+	//* Whether a return is on its way back to the call, so nothing else should run.
+	boolean isReturning() {
+		return returning;
+	}
+
+	//* Whether the statements just run ended in a return, rather than running off their end. Clears the signal.
+	boolean returned() {
+		if (!returning)
+			return false;
+		returning = false;
+		return true;
+	}
+
+	//* Takes the value of the return which ended a call, so the interpreter doesn't keep it alive.
+	Object returnValue() {
+		Object value = returnValue;
+		returnValue = null;
+		return value;
+	}
+
+	//* Looks up a local variable in the frame or the captured cells, using the location the resolver left on the node.
+	private Object lookUpVariable(int location, int slot) {
+		if (location == Resolver.LOCAL)
+			return stack[frame + slot];
+		if (location == Resolver.BOXED)
+			return ((Environment.Cell) stack[frame + slot]).value;
+		return captures[slot].value;
+	}
+
+	//* Calls whatever a callee evaluated to with the value of each argument.
+	//* Up to four arguments go to the callable's entry point for that many, so no list is made for them.
+	private Object call(Object callee, Token paren, List<Expr> argumentExprs) {
+		switch (argumentExprs.size()) {
+			case 0:
+				return callable(callee, paren, 0).call0(this);
+			case 1: {
+				Object a = evaluate(argumentExprs.get(0));
+				return callable(callee, paren, 1).call1(this, a);
+			}
+			case 2: {
+				Object a = evaluate(argumentExprs.get(0));
+				Object b = evaluate(argumentExprs.get(1));
+				return callable(callee, paren, 2).call2(this, a, b);
+			}
+			case 3: {
+				Object a = evaluate(argumentExprs.get(0));
+				Object b = evaluate(argumentExprs.get(1));
+				Object c = evaluate(argumentExprs.get(2));
+				return callable(callee, paren, 3).call3(this, a, b, c);
+			}
+			case 4: {
+				Object a = evaluate(argumentExprs.get(0));
+				Object b = evaluate(argumentExprs.get(1));
+				Object c = evaluate(argumentExprs.get(2));
+				Object d = evaluate(argumentExprs.get(3));
+				return callable(callee, paren, 4).call4(this, a, b, c, d);
 			}
-		} finally { // Use 'finally' so that if an exception is thrown, it still gets updated
-			this.environment = previous;
+			default: {
+				List<Object> arguments = evaluate(argumentExprs);
+				return callable(callee, paren, arguments.size()).call(this, arguments); // Simply return whatever the call() returns
+			}
+		}
+	}
+
+	//* Checks what a callee evaluated to can be called with the arguments, which have been evaluated by now.
+	LoxCallable callable(Object callee, Token paren, int count) {
+		// Protect against non-callables being called, like 3.14() or "hello"()
+		if (!(callee instanceof LoxCallable)) {
+			throw new RuntimeError(paren, "Can only call functions and classes");
+		}
+
+		LoxCallable function = (LoxCallable) callee; // Cast to a callable and then invoke call. All callables are implement LoxCallable
+		checkArity(function, count, paren);
+		return function;
+	}
+
+	//* Evaluates the arguments of a call, in order.
+	private List<Object> evaluate(List<Expr> argumentExprs) {
+		List<Object> arguments = new ArrayList<>(argumentExprs.size());
+		for (Expr argument : argumentExprs) {
+			arguments.add(evaluate(argument));
 		}
+		return arguments;
 	}
 
-	//* Looks up a variable in the environemnt. Recieves delegations where the number of environments to skip is specified.
-	private Object lookUpVariable(Token name, Expr expr) {
-		// Get resolver distance information
-		Integer distance = locals.get(expr);
-		if (distance != null) {
-			return environment.getAt(distance, name.lexeme);
-		} else { // If no distance info, we assumed global scope, so look there
-			return globals.get(name);
+	//* Check function arity. Raise error if not enough/ too many are passed
+	void checkArity(LoxCallable function, int count, Token paren) {
+		if (count < function.arity()) {
+			throw new RuntimeError(paren,
+					"Expected " + function.arity() + " arguments but got " + count + ".");
 		}
 	}
 
 	//* Implicitly converts any object to a boolean.
-	private boolean isTruthy(Object obj) {
+	boolean isTruthy(Object obj) {
 		if (obj == null)
 			return false;
 		if (obj instanceof Boolean)
@@ -378,7 +868,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	}
 
 	//* Compares two objects for equality.
-	private boolean isEqual(Object a, Object b) {
+	boolean isEqual(Object a, Object b) {
 		if (a == null && b == null)
 			return true;
 		if (a == null)
@@ -387,20 +877,20 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	}
 
 	//* Checks if the operand is a number.
-	private void checkNumberOperand(Token operator, Object operand) {
+	void checkNumberOperand(Token operator, Object operand) {
 		if (operand instanceof Double)
 			return;
 		throw new RuntimeError(operator, "Operand must be a number.");
 	}
 
 	//* Checks if both operands are a number.
-	private void checkNumberOperands(Token operator, Object left, Object right) {
+	void checkNumberOperands(Token operator, Object left, Object right) {
 		if (left instanceof Double && right instanceof Double)
 			return;
 		throw new RuntimeError(operator, "Operands must be a numbers.");
 	}
 
-	private String stringify(Object object) {
+	String stringify(Object object) {
 		if (object == null)
 			return "nil";
 
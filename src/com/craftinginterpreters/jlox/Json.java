@@ -0,0 +1,242 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//* Just enough JSON for the language server's messages.
+// Objects are read as Maps, arrays as Lists and numbers as Doubles. Writing takes the same types back.
+class Json {
+	private final String text;
+	private int current = 0;
+
+	private Json(String text) {
+		this.text = text;
+	}
+
+	//* Reads one JSON value. Throws IllegalArgumentException if the text isn't valid JSON.
+	static Object parse(String text) {
+		Json json = new Json(text);
+		Object value = json.value();
+		json.skipSpace();
+		if (json.current != text.length())
+			throw json.error("Unexpected text after value");
+		return value;
+	}
+
+	//* Writes a value as JSON.
+	static String write(Object value) {
+		StringBuilder out = new StringBuilder();
+		write(value, out);
+		return out.toString();
+	}
+
+	//~ Reading
+
+	private Object value() {
+		skipSpace();
+		if (current >= text.length())
+			throw error("Unexpected end of input");
+
+		char c = text.charAt(current);
+		switch (c) {
+			case '{':
+				return object();
+			case '[':
+				return array();
+			case '"':
+				return string();
+			case 't':
+				return word("true", true);
+			case 'f':
+				return word("false", false);
+			case 'n':
+				return word("null", null);
+			default:
+				if (c == '-' || (c >= '0' && c <= '9'))
+					return number();
+				throw error("Unexpected '" + c + "'");
+		}
+	}
+
+	private Map<String, Object> object() {
+		Map<String, Object> object = new LinkedHashMap<>();
+		expect('{');
+		skipSpace();
+		if (peek() == '}') {
+			current++;
+			return object;
+		}
+
+		do {
+			skipSpace();
+			String key = string();
+			skipSpace();
+			expect(':');
+			object.put(key, value());
+			skipSpace();
+		} while (match(','));
+
+		expect('}');
+		return object;
+	}
+
+	private List<Object> array() {
+		List<Object> array = new ArrayList<>();
+		expect('[');
+		skipSpace();
+		if (peek() == ']') {
+			current++;
+			return array;
+		}
+
+		do {
+			array.add(value());
+			skipSpace();
+		} while (match(','));
+
+		expect(']');
+		return array;
+	}
+
+	private String string() {
+		expect('"');
+		StringBuilder out = new StringBuilder();
+		for (;;) {
+			if (current >= text.length())
+				throw error("Unterminated string");
+
+			char c = text.charAt(current++);
+			if (c == '"')
+				return out.toString();
+			if (c != '\\') {
+				out.append(c);
+				continue;
+			}
+
+			if (current >= text.length())
+				throw error("Unterminated string");
+			char escaped = text.charAt(current++);
+			switch (escaped) {
+				case 'b': out.append('\b'); break;
+				case 'f': out.append('\f'); break;
+				case 'n': out.append('\n'); break;
+				case 'r': out.append('\r'); break;
+				case 't': out.append('\t'); break;
+				case 'u':
+					if (current + 4 > text.length())
+						throw error("Bad unicode escape");
+					out.append((char) Integer.parseInt(text.substring(current, current + 4), 16));
+					current += 4;
+					break;
+				default: out.append(escaped); break; // '"', '\\' and '/'
+			}
+		}
+	}
+
+	private Double number() {
+		int start = current;
+		while (current < text.length() && "+-0123456789.eE".indexOf(text.charAt(current)) != -1)
+			current++;
+		try {
+			return Double.parseDouble(text.substring(start, current));
+		} catch (NumberFormatException e) {
+			throw error("Bad number");
+		}
+	}
+
+	private Object word(String word, Object value) {
+		if (!text.startsWith(word, current))
+			throw error("Unexpected '" + text.charAt(current) + "'");
+		current += word.length();
+		return value;
+	}
+
+	private void skipSpace() {
+		while (current < text.length() && Character.isWhitespace(text.charAt(current)))
+			current++;
+	}
+
+	private char peek() {
+		return current < text.length() ? text.charAt(current) : '\0';
+	}
+
+	private boolean match(char expected) {
+		if (peek() != expected)
+			return false;
+		current++;
+		return true;
+	}
+
+	private void expect(char expected) {
+		if (!match(expected))
+			throw error("Expected '" + expected + "'");
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at " + current + ".");
+	}
+
+	//~ Writing
+
+	private static void write(Object value, StringBuilder out) {
+		if (value == null) {
+			out.append("null");
+		} else if (value instanceof String) {
+			writeString((String) value, out);
+		} else if (value instanceof Double || value instanceof Float) {
+			double number = ((Number) value).doubleValue();
+			if (number == (long) number)
+				out.append((long) number); // Request ids and positions are whole numbers
+			else
+				out.append(number);
+		} else if (value instanceof Number || value instanceof Boolean) {
+			out.append(value);
+		} else if (value instanceof Map) {
+			out.append('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				if (!first)
+					out.append(',');
+				first = false;
+				writeString(entry.getKey().toString(), out);
+				out.append(':');
+				write(entry.getValue(), out);
+			}
+			out.append('}');
+		} else if (value instanceof List) {
+			out.append('[');
+			boolean first = true;
+			for (Object item : (List<?>) value) {
+				if (!first)
+					out.append(',');
+				first = false;
+				write(item, out);
+			}
+			out.append(']');
+		} else {
+			throw new IllegalArgumentException("Can't write " + value.getClass().getSimpleName() + " as JSON.");
+		}
+	}
+
+	private static void writeString(String string, StringBuilder out) {
+		out.append('"');
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			switch (c) {
+				case '"': out.append("\\\""); break;
+				case '\\': out.append("\\\\"); break;
+				case '\n': out.append("\\n"); break;
+				case '\r': out.append("\\r"); break;
+				case '\t': out.append("\\t"); break;
+				default:
+					if (c < 0x20)
+						out.append(String.format("\\u%04x", (int) c));
+					else
+						out.append(c);
+			}
+		}
+		out.append('"');
+	}
+}
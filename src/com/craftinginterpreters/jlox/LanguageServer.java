@@ -0,0 +1,233 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//* A language server speaking LSP over stdin and stdout. Started with --lsp.
+// Keeps a Document for every open file and publishes its compile errors after every change. Changes are taken as
+// ranges, so only the part of a document an edit touches is compiled again.
+class LanguageServer {
+	// Constants, as the protocol numbers them
+	private static final int SYNC_INCREMENTAL = 2;
+	private static final int SEVERITY_ERROR = 1;
+	private static final int METHOD_NOT_FOUND = -32601;
+	private static final int INVALID_REQUEST = -32600;
+
+	private final InputStream in;
+	private final OutputStream out;
+	private final Map<String, Document> documents = new HashMap<>();
+	private boolean shutdown = false;
+
+	LanguageServer(InputStream in, OutputStream out) {
+		this.in = new BufferedInputStream(in);
+		this.out = out;
+	}
+
+	//* Serves until the client says to exit or closes the stream. Returns the process exit code.
+	int serve() throws IOException {
+		for (;;) {
+			String message = read();
+			if (message == null)
+				return 1; // The client went away without asking us to shut down
+
+			Map<?, ?> request;
+			try {
+				request = (Map<?, ?>) Json.parse(message);
+			} catch (IllegalArgumentException | ClassCastException e) {
+				continue; // Nothing we can answer
+			}
+
+			Object method = request.get("method");
+			if ("exit".equals(method))
+				return shutdown ? 0 : 1;
+
+			try {
+				handle((String) method, request.get("id"), (Map<?, ?>) request.get("params"));
+			} catch (RuntimeException e) {
+				// A malformed message. Answer requests so the client isn't left waiting
+				if (request.containsKey("id"))
+					error(request.get("id"), INVALID_REQUEST, "Bad request: " + e);
+			}
+		}
+	}
+
+	//* Does what a message asks. Requests (which have an id) are always answered.
+	private void handle(String method, Object id, Map<?, ?> params) throws IOException {
+		switch (method) {
+			case "initialize": {
+				Map<String, Object> capabilities = new LinkedHashMap<>();
+				capabilities.put("textDocumentSync", SYNC_INCREMENTAL);
+				Map<String, Object> info = new LinkedHashMap<>();
+				info.put("name", "jlox");
+				Map<String, Object> result = new LinkedHashMap<>();
+				result.put("capabilities", capabilities);
+				result.put("serverInfo", info);
+				respond(id, result);
+				return;
+			}
+			case "shutdown":
+				shutdown = true;
+				respond(id, null);
+				return;
+			case "textDocument/didOpen": {
+				Map<?, ?> document = (Map<?, ?>) params.get("textDocument");
+				String uri = (String) document.get("uri");
+				documents.put(uri, new Document((String) document.get("text")));
+				publish(uri);
+				return;
+			}
+			case "textDocument/didChange": {
+				String uri = (String) ((Map<?, ?>) params.get("textDocument")).get("uri");
+				Document document = documents.get(uri);
+				if (document == null)
+					return;
+
+				for (Object item : (List<?>) params.get("contentChanges")) {
+					Map<?, ?> change = (Map<?, ?>) item;
+					Map<?, ?> range = (Map<?, ?>) change.get("range");
+					if (range == null) {
+						document.replace((String) change.get("text"));
+					} else {
+						Map<?, ?> start = (Map<?, ?>) range.get("start");
+						Map<?, ?> end = (Map<?, ?>) range.get("end");
+						document.edit(number(start, "line"), number(start, "character"),
+								number(end, "line"), number(end, "character"), (String) change.get("text"));
+					}
+				}
+				publish(uri);
+				return;
+			}
+			case "textDocument/didClose": {
+				String uri = (String) ((Map<?, ?>) params.get("textDocument")).get("uri");
+				documents.remove(uri);
+				notify("textDocument/publishDiagnostics", diagnostics(uri, new ArrayList<>()));
+				return;
+			}
+			default:
+				// Notifications we don't handle can be ignored, but requests need an answer
+				if (id != null)
+					error(id, METHOD_NOT_FOUND, "Unsupported method: " + method);
+		}
+	}
+
+	private static int number(Map<?, ?> object, String key) {
+		return ((Number) object.get(key)).intValue();
+	}
+
+	//~ Diagnostics
+
+	//* Sends the current errors in a document.
+	private void publish(String uri) throws IOException {
+		notify("textDocument/publishDiagnostics", diagnostics(uri, documents.get(uri).errors()));
+	}
+
+	private static Map<String, Object> diagnostics(String uri, List<Diagnostic> errors) {
+		List<Object> items = new ArrayList<>();
+		for (Diagnostic error : errors) {
+			// Errors only know their line, so mark the whole of it
+			Map<String, Object> range = new LinkedHashMap<>();
+			range.put("start", position(error.line - 1, 0));
+			range.put("end", position(error.line, 0));
+
+			Map<String, Object> item = new LinkedHashMap<>();
+			item.put("range", range);
+			item.put("severity", SEVERITY_ERROR);
+			item.put("source", "jlox");
+			item.put("message", "Error" + error.where + ": " + error.message);
+			items.add(item);
+		}
+
+		Map<String, Object> params = new LinkedHashMap<>();
+		params.put("uri", uri);
+		params.put("diagnostics", items);
+		return params;
+	}
+
+	private static Map<String, Object> position(int line, int character) {
+		Map<String, Object> position = new LinkedHashMap<>();
+		position.put("line", line);
+		position.put("character", character);
+		return position;
+	}
+
+	//~ Transport
+
+	//* Reads one message's JSON. Returns null at the end of the stream.
+	private String read() throws IOException {
+		int length = -1;
+		for (;;) {
+			String header = readLine();
+			if (header == null)
+				return null;
+			if (header.isEmpty())
+				break;
+			if (header.regionMatches(true, 0, "Content-Length:", 0, 15))
+				length = Integer.parseInt(header.substring(15).trim());
+		}
+		if (length < 0)
+			return read(); // Headers without a body. Skip them
+
+		byte[] body = in.readNBytes(length);
+		if (body.length < length)
+			return null;
+		return new String(body, StandardCharsets.UTF_8);
+	}
+
+	//* Reads a header line, without its "\r\n".
+	private String readLine() throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		for (;;) {
+			int b = in.read();
+			if (b == -1)
+				return line.size() == 0 ? null : line.toString(StandardCharsets.US_ASCII);
+			if (b == '\n')
+				break;
+			if (b != '\r')
+				line.write(b);
+		}
+		return line.toString(StandardCharsets.US_ASCII);
+	}
+
+	private void respond(Object id, Object result) throws IOException {
+		Map<String, Object> message = new LinkedHashMap<>();
+		message.put("jsonrpc", "2.0");
+		message.put("id", id);
+		message.put("result", result);
+		send(message);
+	}
+
+	private void error(Object id, int code, String text) throws IOException {
+		Map<String, Object> error = new LinkedHashMap<>();
+		error.put("code", code);
+		error.put("message", text);
+		Map<String, Object> message = new LinkedHashMap<>();
+		message.put("jsonrpc", "2.0");
+		message.put("id", id);
+		message.put("error", error);
+		send(message);
+	}
+
+	private void notify(String method, Object params) throws IOException {
+		Map<String, Object> message = new LinkedHashMap<>();
+		message.put("jsonrpc", "2.0");
+		message.put("method", method);
+		message.put("params", params);
+		send(message);
+	}
+
+	private void send(Map<String, Object> message) throws IOException {
+		byte[] body = Json.write(message).getBytes(StandardCharsets.UTF_8);
+		out.write(("Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		out.write(body);
+		out.flush();
+	}
+}
@@ -0,0 +1,46 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//* A function body which was only skimmed at startup. It is parsed and resolved the first time the function is called.
+// Only top-level functions and the methods of top-level classes are skimmed. Anything nested inside one is parsed
+// along with it, so a skimmed body never closes over locals the resolver hasn't seen.
+class LazyBody {
+	//* The tokens between the braces, ending in EOF.
+	private final TokenStream tokens;
+	//* The resolver's state where the body was skipped. Filled in by the Resolver.
+	Resolver.Context context = null;
+	//* Set if the body turned out to have errors, so later calls don't try again.
+	private boolean failed = false;
+
+	LazyBody(TokenStream tokens) {
+		this.tokens = tokens;
+	}
+
+	//* Parses and resolves the body into the function, as if it had been done at startup.
+	void materialize(Stmt.Function function) {
+		if (failed)
+			throw new RuntimeError(function.name, "Function '" + function.name.lexeme + "' failed to compile.");
+
+		List<Diagnostic> errors = new ArrayList<>();
+		Lox.capture(errors, () -> {
+			List<Stmt> body = new Parser(tokens).parse();
+			if (errors.isEmpty()) {
+				function.body.addAll(body);
+				function.lazy = null;
+				new Resolver().resolveDeferred(function, context);
+			}
+			return null;
+		});
+
+		if (!errors.isEmpty()) {
+			// Report the real errors, then stop the program like any other runtime error
+			Lox.replay(errors);
+			failed = true;
+			function.body.clear();
+			function.lazy = this;
+			throw new RuntimeError(function.name, "Function '" + function.name.lexeme + "' failed to compile.");
+		}
+	}
+}
@@ -4,11 +4,14 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class Lox {
 
@@ -17,28 +20,100 @@ public class Lox {
 	// Whether an error occured during execution.
 	static boolean hadError = false;
 	static boolean hadRuntimeError = false;
+	// When set on a thread, compile errors are collected here instead of being printed. See capture().
+	private static final ThreadLocal<List<Diagnostic>> captured = new ThreadLocal<>();
+
+	// Command line options.
+	private static boolean streaming = false; // Lex files straight out of a memory mapping, one token at a time
+	private static boolean parallelScan = false; // Lex large sources in chunks across all cores
+	private static AstCache cache = null; // Where compiled scripts are kept between runs. Off unless asked for
+	private static boolean lazy = false; // Only parse top-level function bodies when they are first called
+	private static boolean parallelResolve = false; // Resolve top-level statements in batches across all cores
+	private static boolean watch = false; // Swap in changed functions and classes while the script runs
+	private static boolean icStats = false; // Report how often property lookups hit their inline caches
+	private static boolean compile = false; // Compile the program into closures and run those instead of the tree
 
 	public static void main(String[] args) throws IOException {
-		if (args.length > 1) {
+		List<String> scripts = new ArrayList<>();
+		for (String arg : args) {
+			if (arg.equals("--stream")) {
+				streaming = true;
+			} else if (arg.equals("--parallel-scan")) {
+				parallelScan = true;
+			} else if (arg.equals("--parallel-resolve")) {
+				parallelResolve = true;
+			} else if (arg.equals("--lazy")) {
+				lazy = true;
+			} else if (arg.equals("--cache")) {
+				cache = new AstCache(Paths.get(System.getProperty("java.io.tmpdir"), "jlox-cache"));
+			} else if (arg.startsWith("--cache=")) {
+				cache = new AstCache(Paths.get(arg.substring("--cache=".length())));
+			} else if (arg.equals("--watch")) {
+				watch = true;
+			} else if (arg.equals("--compile")) {
+				compile = true;
+			} else if (arg.equals("--ic-stats")) {
+				icStats = true;
+				InlineCache.counting = true;
+			} else if (arg.equals("--lsp")) {
+				// The editor talks to us over stdin and stdout, so nothing else can run
+				System.exit(new LanguageServer(System.in, System.out).serve());
+			} else if (arg.startsWith("--")) {
+				System.out.println("Unknown option: " + arg);
+				usage();
+				return;
+			} else {
+				scripts.add(arg);
+			}
+		}
+
+		if (compile)
+			interpreter.compiler = new ClosureCompiler();
+
+		if (scripts.size() > 1) {
 			// Too many source files are supplied. jlox takes one at a time.
-			System.out.println("Usage: jlox [script]");
-		} else if (args.length == 1) {
+			usage();
+		} else if (scripts.size() == 1) {
 			// A file is supplied, so run it
-			runFile(args[0]);
+			runFile(scripts.get(0));
 		} else {
 			// No file is supplied, so open up a prompt for input 
 			runPrompt();
 		}
 	}
 
+	private static void usage() {
+		System.out.println("Usage: jlox [--stream] [--parallel-scan] [--parallel-resolve] [--cache[=dir]] [--lazy] [--watch] [--ic-stats] [--compile] [--lsp] [script]");
+	}
+
 	//~ Execution
 
 	//* Executes a Lox file.
 	private static void runFile(String path) throws IOException {
-		// Read the file
-		byte[] bytes = Files.readAllBytes(Paths.get(path));
+		CharSequence source;
+		ByteBuffer content;
+		if (streaming) {
+			// Map the file instead of reading it onto the heap.
+			MappedSource mapped = MappedSource.map(Paths.get(path), Charset.defaultCharset());
+			source = mapped;
+			content = mapped.bytes();
+		} else {
+			// Read the file
+			byte[] bytes = Files.readAllBytes(Paths.get(path));
+			source = new String(bytes, Charset.defaultCharset());
+			content = ByteBuffer.wrap(bytes);
+		}
+
 		// Execute the file
-		run(new String(bytes, Charset.defaultCharset()));
+		interpreter.modules.start(Paths.get(path), content);
+		if (watch)
+			new HotReload(Paths.get(path), source, interpreter).start();
+		if (cache != null)
+			runCached(source, content);
+		else
+			run(source);
+		if (icStats)
+			System.err.println(InlineCache.report());
 
 		// Error codes
 		if (hadError)
@@ -53,37 +128,87 @@ public class Lox {
 		InputStreamReader input = new InputStreamReader(System.in);
 		BufferedReader reader = new BufferedReader(input);
 		
+		ReplSession session = new ReplSession(interpreter);
 		for (;;) {
-			System.out.print("> ");
+			System.out.print(session.pending() ? ". " : "> ");
 			String line = reader.readLine();
-			if (line == null)
+			if (line == null) {
+				session.finish();
 				break;
-			run(line);
-			// Each prompt is separate.
-			hadError = false;
+			}
+			session.add(line);
 		}
 	}
 
+	//* Runs a Lox program, using an earlier compile of the same bytes if the cache has one.
+	private static void runCached(CharSequence source, ByteBuffer content) {
+		List<Stmt> statements = compile(source, content);
+		if (statements != null)
+			interpreter.interpret(statements);
+	}
+
 	//* Runs a Lox program.
-	private static void run(String source) {
-		Scanner scanner = new Scanner(source);
-		List<Token> tokens = scanner.scanTokens();
+	private static void run(CharSequence source) {
+		List<Stmt> statements = compile(source);
+		if (statements == null)
+			return;
+
+		// System.out.println(new AstPrinter().print(expression));
+		interpreter.interpret(statements);
+	}
+
+	//* Compiles a Lox program, going through the cache if there is one. Returns null if there were any errors.
+	static List<Stmt> compile(CharSequence source, ByteBuffer content) {
+		if (cache == null || lazy) // Skimmed bodies aren't compiled, so there would be nothing to cache
+			return compile(source);
+
+		// An unchanged script can skip straight to execution
+		byte[] key = AstCache.hash(content);
+		List<Stmt> statements = cache.load(key);
+
+		if (statements == null) {
+			statements = compile(source);
+			if (statements != null)
+				cache.store(key, statements);
+		}
+		return statements;
+	}
 
-		Parser parser = new Parser(tokens);
+	//* Scans, parses and resolves a Lox program. Returns null if there were any errors.
+	private static List<Stmt> compile(CharSequence source) {
+		Parser parser = new Parser(scan(source), lazy);
 		List<Stmt> statements = parser.parse();
 
 		if (hadError)
-			return;
+			return null;
 
-		Resolver resolver = new Resolver(interpreter);
-		resolver.resolve(statements);
+		if (parallelResolve) {
+			ParallelResolver.resolve(statements);
+		} else {
+			Resolver resolver = new Resolver();
+			resolver.resolve(statements);
+		}
 
 		if (hadError)
-			return;
+			return null;
 
-		// System.out.println(new AstPrinter().print(expression));
-		interpreter.interpret(statements);
+		return statements;
+	}
+
+	//* Sets up scanning a source in whichever way the options ask for.
+	private static TokenStream scan(CharSequence source) {
+		TokenStream tokens;
+		if (parallelScan) {
+			tokens = ParallelScanner.scan(source);
+		} else if (streaming) {
+			// Let the parser pull tokens as it goes. Nothing grows with the size of the file except the AST.
+			tokens = TokenStream.pull(new Scanner(source));
+		} else {
+			Scanner scanner = new Scanner(source);
+			tokens = scanner.scanBuffer();
+		}
 
+		return tokens;
 	}
 	
 	//~ Error Handling
@@ -108,7 +233,31 @@ public class Lox {
 
 	//* Reports an error to stderr with the line number, message and a position.
 	private static void report(int line, String where, String message) {
-		System.err.println("[line " + line + "] Error" + where + ": " + message);
+		Diagnostic diagnostic = new Diagnostic(line, where, message);
+		List<Diagnostic> into = captured.get();
+		if (into != null) {
+			into.add(diagnostic);
+			return;
+		}
+
+		System.err.println(diagnostic);
 		hadError = true;
 	}
+
+	//* Runs a compile pass on this thread, collecting any errors it reports into a list instead of printing them.
+	static <T> T capture(List<Diagnostic> into, Supplier<T> pass) {
+		List<Diagnostic> outer = captured.get();
+		captured.set(into);
+		try {
+			return pass.get();
+		} finally {
+			captured.set(outer);
+		}
+	}
+
+	//* Reports errors which were captured earlier, in the order given.
+	static void replay(List<Diagnostic> diagnostics) {
+		for (Diagnostic diagnostic : diagnostics)
+			report(diagnostic.line, diagnostic.where, diagnostic.message);
+	}
 }
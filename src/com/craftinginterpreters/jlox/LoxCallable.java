@@ -1,10 +1,38 @@
 package com.craftinginterpreters.jlox;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public interface LoxCallable {
 	//* How many parameters the callable expects.
 	int arity();
 
+	//* Calls with any number of arguments. Calls with up to four go through the entry points below instead.
 	Object call(Interpreter interpreter, List<Object> arguments);
+
+	//~ Fixed Arity Entry Points
+
+	// Call sites with up to four arguments pass them straight to these, so no list is made. Callables which can take
+	// their arguments that way override them; the rest have them collected into a list for call().
+
+	default Object call0(Interpreter interpreter) {
+		return call(interpreter, Collections.emptyList());
+	}
+
+	default Object call1(Interpreter interpreter, Object a) {
+		return call(interpreter, Collections.singletonList(a));
+	}
+
+	default Object call2(Interpreter interpreter, Object a, Object b) {
+		return call(interpreter, Arrays.asList(a, b));
+	}
+
+	default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+		return call(interpreter, Arrays.asList(a, b, c));
+	}
+
+	default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+		return call(interpreter, Arrays.asList(a, b, c, d));
+	}
 }
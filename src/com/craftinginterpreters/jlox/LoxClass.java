@@ -1,47 +1,106 @@
 package com.craftinginterpreters.jlox;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class LoxClass implements LoxCallable {
+	//* Counts redefinitions (see HotReload). A class built before the latest one rebuilds its table, since a class it
+	//* inherits from may have changed. Caches of method lookups check it for the same reason.
+	static int redefinitions = 0;
+
 	final String name;
+	//* The shape new instances start out with. Kept on redefinition, so old and new instances still share shapes.
+	final Shape shape = new Shape();
 	private LoxClass superclass;
-	private final Map<String, LoxFunction> methods;
+	private Map<String, LoxFunction> methods; // Only the ones the class declares
+	//* Every method of the class, inherited ones included, so finding one is a single lookup however deep the hierarchy.
+	private Map<String, LoxFunction> table;
+	//* The initializer, from the table, and the number of arguments calling the class takes.
+	private LoxFunction initializer;
+	private int arity;
+	//* The redefinitions count when the table was built.
+	private int built;
 
 	LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
 		this.name = name;
 		this.superclass = superclass;
 		this.methods = methods;
+		flatten();
 	}
 
-	public LoxFunction findMethod(String name) {
-		if (methods.containsKey(name)) {
-			return methods.get(name);
-		}
-		
-		if (superclass != null)
-			return superclass.findMethod(name);
+	//* Takes on the superclass and methods of a newer version of the class. Instances keep their fields. See HotReload.
+	void redefine(LoxClass newer) {
+		superclass = newer.superclass;
+		methods = newer.methods;
+		redefinitions++; // Subclasses rebuild their tables the next time they are used
+		flatten();
+	}
 
-		return null;
+	//* Builds the method table from the superclass' table and the class' own methods, which override it.
+	private void flatten() {
+		table = superclass == null ? new HashMap<>() : new HashMap<>(superclass.current().table);
+		table.putAll(methods);
+		initializer = table.get("init");
+		arity = initializer == null ? 0 : initializer.arity();
+		built = redefinitions;
+	}
+
+	//* Returns the class after rebuilding its table if a redefinition may have left it out of date.
+	private LoxClass current() {
+		if (built != redefinitions)
+			flatten();
+		return this;
+	}
+
+	public LoxFunction findMethod(String name) {
+		return current().table.get(name);
 	}
 
 	// LoxCallable
 	@Override
 	public Object call(Interpreter interpreter, List<Object> arguments) {
+		return construct(interpreter, null, null, null, null, arguments);
+	}
+
+	@Override
+	public Object call0(Interpreter interpreter) {
+		return construct(interpreter, null, null, null, null, null);
+	}
+
+	@Override
+	public Object call1(Interpreter interpreter, Object a) {
+		return construct(interpreter, a, null, null, null, null);
+	}
+
+	@Override
+	public Object call2(Interpreter interpreter, Object a, Object b) {
+		return construct(interpreter, a, b, null, null, null);
+	}
+
+	@Override
+	public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+		return construct(interpreter, a, b, c, null, null);
+	}
+
+	@Override
+	public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+		return construct(interpreter, a, b, c, d, null);
+	}
+
+	//* Makes an instance. The arguments are passed on to the initializer as LoxFunction.call() takes them.
+	private LoxInstance construct(Interpreter interpreter, Object a, Object b, Object c, Object d, List<Object> arguments) {
 		LoxInstance instance = new LoxInstance(this);
-		LoxFunction initializer = findMethod("init"); // Find initializer method and if present, call it with the arguments passed to it
+		LoxFunction initializer = current().initializer; // If there is an initializer, call it with the arguments passed
 		if (initializer != null) {
-			initializer.bind(instance).call(interpreter, arguments);
+			initializer.call(interpreter, instance, a, b, c, d, arguments);
 		}
 		return instance;
 	}
 
 	@Override
 	public int arity() {
-		LoxFunction initializer = findMethod("init");
-		if (initializer == null)
-			return 0;
-		return initializer.arity();
+		return current().arity;
 	}
 
 	@Override
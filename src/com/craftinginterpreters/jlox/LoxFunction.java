@@ -5,40 +5,110 @@ import java.util.List;
 //* _Runtime_ version of a Lox function
 public class LoxFunction implements LoxCallable {
 	private final Stmt.Function declaration; // Contains name, list of parameters and list of stmts
-	private final Environment closure; // Contains the environment preceding the function
-	private final boolean isInitializer; // Whether the function is an initializer. Overrides the function's return
+	private final Environment.Cell[] captures; // The variables from around the declaration the function uses, and nothing else
+	private final LoxClass superclass; // For methods of a subclass, what 'super' is
+	private final LoxInstance receiver; // For bound methods, what 'this' is
+	private final boolean isInit; // Whether the function is named like an initializer. Only methods are initializers
 
-	LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+	//* Makes a function or, given a class' superclass (or null if it has none), a method.
+	LoxFunction(Stmt.Function declaration, Environment.Cell[] captures, LoxClass superclass) {
+		this(declaration, captures, superclass, null);
+	}
+
+	private LoxFunction(Stmt.Function declaration, Environment.Cell[] captures, LoxClass superclass, LoxInstance receiver) {
 		this.declaration = declaration;
-		this.closure = closure;
-		this.isInitializer = isInitializer;
+		this.captures = captures;
+		this.superclass = superclass;
+		this.receiver = receiver;
+		this.isInit = declaration.name.lexeme.equals("init"); // No anonymous functions in classes, so the name is guarenteed
 	}
 
 	LoxFunction bind(LoxInstance instance) {
-		Environment environment = new Environment(closure);
-		environment.define("this", instance); // Redefine what 'this' is on top of the existing closure to get access to most recent fields
-		return new LoxFunction(declaration, environment, isInitializer);
+		return new LoxFunction(declaration, captures, superclass, instance); // 'this' goes in the method's first slot when it is called
 	}
 
 	@Override
 	public Object call(Interpreter interpreter, List<Object> arguments) {
-		// Create new environment based off the global environment. Will place arguments into here
-		Environment environment = new Environment(closure);
+		return call(interpreter, receiver, null, null, null, null, arguments);
+	}
 
-		// Add each argument to the environment under the name of the parameter
-		for (int i = 0; i < declaration.params.size(); i++) {
-			environment.define(declaration.params.get(i).lexeme, arguments.get(i));
-		}
+	@Override
+	public Object call0(Interpreter interpreter) {
+		return call(interpreter, receiver, null, null, null, null, null);
+	}
+
+	@Override
+	public Object call1(Interpreter interpreter, Object a) {
+		return call(interpreter, receiver, a, null, null, null, null);
+	}
+
+	@Override
+	public Object call2(Interpreter interpreter, Object a, Object b) {
+		return call(interpreter, receiver, a, b, null, null, null);
+	}
+
+	@Override
+	public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+		return call(interpreter, receiver, a, b, c, null, null);
+	}
+
+	@Override
+	public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+		return call(interpreter, receiver, a, b, c, d, null);
+	}
+
+	//* Calls the function, as a method of the receiver unless it is null. The arguments are either the list or, when
+	//* there is no list, the first four. The caller has checked there are enough for the parameters.
+	// Methods are called through here with their instance by Expr.Invoke, so they needn't be bound first.
+	Object call(Interpreter interpreter, LoxInstance receiver, Object a, Object b, Object c, Object d, List<Object> arguments) {
+		if (declaration.lazy != null) // First call of a skimmed function, so parse it now
+			declaration.lazy.materialize(declaration);
+
+		int caller = interpreter.pushFrame(declaration.frameSize);
+		Environment.Cell[] callerCaptures = interpreter.enterClosure(captures);
 
-		// Execute the function body in the new environment
 		try {
-			interpreter.executeBlock(declaration.body, environment);
-		} catch (Return returnValue) {
-			if (isInitializer) // Force initializer to always return the instance
-				return closure.getAt(0, "this");
-			return returnValue.value;
+			// Methods have 'this', then 'super' if the class has a superclass, in the slots before the parameters
+			int slot = 0;
+			if (receiver != null) {
+				interpreter.setLocal(slot++, receiver);
+				if (superclass != null)
+					interpreter.setLocal(slot++, superclass);
+			}
+
+			// Add each argument to the frame in the slot of the parameter
+			int params = declaration.params.size();
+			if (arguments != null) {
+				for (int i = 0; i < params; i++)
+					interpreter.setLocal(slot + i, arguments.get(i));
+			} else {
+				if (params > 0)
+					interpreter.setLocal(slot, a);
+				if (params > 1)
+					interpreter.setLocal(slot + 1, b);
+				if (params > 2)
+					interpreter.setLocal(slot + 2, c);
+				if (params > 3)
+					interpreter.setLocal(slot + 3, d);
+			}
+			if (declaration.cells != null) {
+				for (int cell : declaration.cells) // Nested functions use these, so they are shared through cells
+					interpreter.box(cell);
+			}
+
+			// Execute the function body in the new frame
+			interpreter.executeBody(declaration);
+			if (interpreter.returned()) {
+				Object value = interpreter.returnValue();
+				if (isInit && receiver != null) // Force initializer to always return the instance
+					return receiver;
+				return value;
+			}
+		} finally {
+			interpreter.enterClosure(callerCaptures);
+			interpreter.popFrame(caller);
 		}
-		// note: environment was made and used here. When the function returns, it is discarded. However, if a reference is kept to it from an outside environment, it will be kept.
+		// note: the frame was made and used here. When the function returns, it is given back. Anything a closure made here needs is in its cells.
 		return null;
 	}
 
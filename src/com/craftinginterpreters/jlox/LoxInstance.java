@@ -1,20 +1,60 @@
 package com.craftinginterpreters.jlox;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 //* Runtime version of a Lox class instance
 public class LoxInstance {
+	private static final Object[] NO_VALUES = new Object[0];
+
 	private LoxClass klass;
-	private final Map<String, Object> fields = new HashMap<>();
+	//* Which slot of values each field is in. Shared with other instances given the same fields (see Shape).
+	private Shape shape;
+	private Object[] values = NO_VALUES;
+	//* The fields, once there are too many for a shape. Shape and values are then null.
+	private Map<String, Object> fields = null;
 
 	LoxInstance(LoxClass klass) {
 		this.klass = klass;
+		this.shape = klass.shape;
+	}
+
+	//~ Inline Cache Access
+
+	LoxClass klass() {
+		return klass;
+	}
+
+	//* The shape of the instance, or null if its fields are in a map.
+	Shape shape() {
+		return shape;
 	}
 
+	//* Reads the field in a slot of the instance's shape.
+	Object value(int slot) {
+		return values[slot];
+	}
+
+	//* Writes the field in a slot, moving the instance on to a shape. Adding a field gives the shape after it, and the
+	//* next slot. Otherwise it's the instance's current shape.
+	void put(int slot, Shape shape, Object value) {
+		if (slot == values.length)
+			values = Arrays.copyOf(values, Math.max(4, slot * 2));
+		values[slot] = value;
+		this.shape = shape;
+	}
+
+	//~ Lookups by Name
+
 	Object get(Token name) {
-		if (fields.containsKey(name.lexeme)) {
-			return fields.get(name.lexeme);
+		if (fields != null) {
+			if (fields.containsKey(name.lexeme))
+				return fields.get(name.lexeme);
+		} else {
+			int slot = shape.slot(name.lexeme);
+			if (slot != -1)
+				return values[slot];
 		}
 
 		LoxFunction method = klass.findMethod(name.lexeme);
@@ -24,9 +64,49 @@ public class LoxInstance {
 		throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
 	}
 
+	//* Finds the method a property names, to call it without binding it. Returns null if the property is a field,
+	//* since fields shadow methods.
+	LoxFunction method(Token name) {
+		if (fields != null ? fields.containsKey(name.lexeme) : shape.slot(name.lexeme) != -1)
+			return null;
+
+		LoxFunction method = klass.findMethod(name.lexeme);
+		if (method == null)
+			throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+		return method;
+	}
+
 	void set(Token name, Object value) {
 		// Lox allows arbitrary fields, so no need to check if the field exists.
-		fields.put(name.lexeme, value);
+		if (fields != null) {
+			fields.put(name.lexeme, value);
+			return;
+		}
+
+		int slot = shape.slot(name.lexeme);
+		if (slot != -1) {
+			values[slot] = value;
+			return;
+		}
+
+		// A new field, so the instance moves on to the next shape
+		slot = shape.size();
+		if (slot == Shape.MAX_FIELDS) {
+			toFields();
+			fields.put(name.lexeme, value);
+			return;
+		}
+		put(slot, shape.with(name.lexeme), value);
+	}
+
+	//* Moves the fields from the values array into a map, leaving shapes behind for good.
+	private void toFields() {
+		fields = new HashMap<>();
+		String[] names = shape.names();
+		for (int i = 0; i < names.length; i++)
+			fields.put(names[i], values[i]);
+		shape = null;
+		values = null;
 	}
 
 	public String toString() {
@@ -0,0 +1,108 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//* A source file which is memory-mapped and read as bytes instead of being copied onto the heap as a String.
+// Every Lox token is ASCII, so the Scanner is handed one char per byte. Only the text copied out of the file (lexemes
+// and string literals) is decoded, so non-ASCII text inside strings still comes out right.
+// In UTF-8, a multi-byte character shows the Scanner one non-ASCII char per char it decodes to (two for those outside
+// the BMP), then blanks for the rest of its bytes. So a stray one is an error once, as it is when scanning a String.
+class MappedSource implements CharSequence {
+	//* What the first byte of a stray non-ASCII character is scanned as.
+	private static final char NON_ASCII = '\uFFFD';
+
+	private final ByteBuffer bytes;
+	private final Charset charset;
+	private final boolean utf8;
+
+	private MappedSource(ByteBuffer bytes, Charset charset) {
+		this.bytes = bytes;
+		this.charset = charset;
+		this.utf8 = charset.equals(StandardCharsets.UTF_8);
+	}
+
+	//* Maps a file read-only. The mapping stays valid after the channel is closed.
+	static MappedSource map(Path path, Charset charset) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Script is too large to map: " + path);
+
+			return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), charset);
+		}
+	}
+
+	//* The raw bytes of the file.
+	ByteBuffer bytes() {
+		return bytes.duplicate();
+	}
+
+	@Override
+	public int length() {
+		return bytes.limit();
+	}
+
+	@Override
+	public char charAt(int index) {
+		int b = bytes.get(index) & 0xff;
+		if (b < 0x80 || !utf8)
+			return (char) b;
+		if (!isContinuation(b))
+			return NON_ASCII;
+
+		// A continuation byte. If it is part of a well-formed character, that character was already seen at its first byte
+		for (int back = 1; back <= 3 && index - back >= 0; back++) {
+			int lead = bytes.get(index - back) & 0xff;
+			if (isContinuation(lead))
+				continue;
+			int length = sequenceLength(lead);
+			if (back >= length || !continues(index - back, length))
+				return NON_ASCII;
+			return length == 4 && back == 1 ? NON_ASCII : ' '; // The second half of a surrogate pair
+		}
+		return NON_ASCII;
+	}
+
+	private static boolean isContinuation(int b) {
+		return (b & 0xc0) == 0x80;
+	}
+
+	//* Number of bytes in the UTF-8 sequence a lead byte starts, or 0 if it can't start one.
+	private static int sequenceLength(int lead) {
+		if (lead >= 0xc2 && lead <= 0xdf)
+			return 2;
+		if (lead >= 0xe0 && lead <= 0xef)
+			return 3;
+		if (lead >= 0xf0 && lead <= 0xf4)
+			return 4;
+		return 0;
+	}
+
+	//* Whether the bytes after a lead byte are the continuation bytes its sequence needs.
+	private boolean continues(int start, int length) {
+		if (start + length > bytes.limit())
+			return false;
+		for (int i = start + 1; i < start + length; i++) {
+			if (!isContinuation(bytes.get(i) & 0xff))
+				return false;
+		}
+		return true;
+	}
+
+	//* Decodes a range of the file. Note the result may be shorter than the range if it holds multi-byte characters.
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return charset.decode(bytes.slice(start, end - start)).toString();
+	}
+
+	@Override
+	public String toString() {
+		return subSequence(0, length()).toString();
+	}
+}
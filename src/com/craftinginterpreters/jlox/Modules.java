@@ -0,0 +1,70 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//* Loads the files named by import statements. A module's top level runs in the global environment, so whatever
+// it declares is visible to the importer once the import is done.
+// Modules are known by their real path and the hash of their bytes. Each is compiled and run once per process; importing
+// it again does nothing. If the file's bytes have changed since, the new version is compiled and run in its place.
+// With --cache, compiles go through the AstCache, so a library shared by many scripts is only compiled once on disk too.
+class Modules {
+	//* The hash of the bytes each module was last run from.
+	private final Map<Path, byte[]> loaded = new HashMap<>();
+	//* Directory relative imports start from: the one holding the file being run.
+	private Path directory = Paths.get("").toAbsolutePath();
+
+	//* Notes the script being run, so its imports are found next to it. The script counts as loaded, so an import
+	//* cycle back to it does nothing, as it would for any other module.
+	void start(Path script, ByteBuffer content) throws IOException {
+		Path path = script.toRealPath();
+		loaded.put(path, AstCache.hash(content));
+		Path parent = path.getParent();
+		if (parent != null)
+			directory = parent;
+	}
+
+	//* Runs the module an import names, unless it has already been run.
+	void load(Stmt.Import stmt, Interpreter interpreter) {
+		Path path;
+		byte[] bytes;
+		try {
+			path = directory.resolve(stmt.path).toRealPath();
+			bytes = Files.readAllBytes(path);
+		} catch (IOException | InvalidPathException e) {
+			throw new RuntimeError(stmt.keyword, "Could not read module '" + stmt.path + "'.");
+		}
+
+		ByteBuffer content = ByteBuffer.wrap(bytes);
+		byte[] hash = AstCache.hash(content);
+		if (Arrays.equals(loaded.get(path), hash))
+			return; // Already run, or an import cycle back to a module which is still running
+		loaded.put(path, hash);
+
+		List<Stmt> statements = Lox.compile(new String(bytes, Charset.defaultCharset()), content);
+		if (statements == null) {
+			loaded.remove(path);
+			throw new RuntimeError(stmt.keyword, "Module '" + stmt.path + "' failed to compile.");
+		}
+
+		Path outer = directory;
+		directory = path.getParent();
+		try {
+			if (interpreter.compiler != null) // Modules' top-level code runs compiled, like the script's
+				interpreter.compiler.compile(statements).run(interpreter);
+			else
+				interpreter.executeBlock(statements);
+		} finally {
+			directory = outer;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+//* Resolves the top-level statements of a large program in batches on the ForkJoin pool.
+// At the top level the resolver has no scopes and is outside any function or class, so every top-level statement
+// resolves the same no matter what came before it. Each batch gets a Resolver of its own, which only writes to the
+// nodes of its own statements. Errors are held per batch and reported in source order once all are done.
+class ParallelResolver {
+	// Programs with fewer top-level statements than this aren't worth splitting.
+	private static final int MIN_BATCH = 64;
+
+	//* A run of top-level statements, and the errors resolving them reported.
+	private static class Batch {
+		final List<Stmt> statements;
+		final List<Diagnostic> errors = new ArrayList<>();
+
+		Batch(List<Stmt> statements) {
+			this.statements = statements;
+		}
+	}
+
+	//* Resolves a program. Reports the same errors, in the same order, as Resolver.resolve().
+	static void resolve(List<Stmt> statements) {
+		int workers = ForkJoinPool.getCommonPoolParallelism();
+		if (workers < 2 || statements.size() < MIN_BATCH * 2) {
+			new Resolver().resolve(statements);
+			return;
+		}
+
+		int batchSize = Math.max(MIN_BATCH, statements.size() / (workers * 4)); // A few batches per core to even out the load
+		List<Batch> batches = new ArrayList<>();
+		for (int from = 0; from < statements.size(); from += batchSize)
+			batches.add(new Batch(statements.subList(from, Math.min(from + batchSize, statements.size()))));
+
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (Batch batch : batches) {
+			tasks.add(ForkJoinPool.commonPool().submit(() -> {
+				Lox.capture(batch.errors, () -> {
+					new Resolver().resolve(batch.statements);
+					return null;
+				});
+			}));
+		}
+
+		for (int i = 0; i < batches.size(); i++) {
+			tasks.get(i).join();
+			Lox.replay(batches.get(i).errors); // In source order, no matter which batch finished first
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+//* Scans a large source in chunks on the ForkJoin pool and stitches the tokens back together.
+// Chunks are cut right after a newline which sits outside any string or comment. No token can span such a
+// newline, so each chunk scans exactly as it would in the middle of one serial pass, given the line it starts on.
+// Finding the cuts is one serial pass too, but it only skips over strings and comments and never allocates.
+class ParallelScanner {
+	// Sources smaller than this aren't worth splitting.
+	private static final int MIN_CHUNK = 1 << 16;
+
+	//* A piece of the source to scan, and what scanning it produced.
+	private static class Chunk {
+		final int from;
+		final int to;
+		final int line; // Line the chunk starts on
+		final List<Diagnostic> errors = new ArrayList<>();
+		TokenBuffer tokens;
+
+		Chunk(int from, int to, int line) {
+			this.from = from;
+			this.to = to;
+			this.line = line;
+		}
+	}
+
+	//* Scans a source into a buffer. Tokens, lines and errors all come out the same as Scanner.scanBuffer().
+	static TokenBuffer scan(CharSequence source) {
+		int workers = ForkJoinPool.getCommonPoolParallelism();
+		if (workers < 2)
+			return new Scanner(source).scanBuffer();
+
+		int chunkSize = Math.max(MIN_CHUNK, source.length() / (workers * 4)); // A few chunks per core to even out the load
+		List<Chunk> chunks = split(source, chunkSize);
+
+		if (chunks.size() == 1)
+			return new Scanner(source).scanBuffer();
+
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (Chunk chunk : chunks) {
+			tasks.add(ForkJoinPool.commonPool().submit(() -> {
+				chunk.tokens = Lox.capture(chunk.errors,
+						() -> new Scanner(source, chunk.from, chunk.to, chunk.line).scanBuffer());
+			}));
+		}
+
+		List<TokenBuffer> pieces = new ArrayList<>();
+		for (int i = 0; i < chunks.size(); i++) {
+			tasks.get(i).join();
+			Lox.replay(chunks.get(i).errors); // In source order, no matter which chunk finished first
+			pieces.add(chunks.get(i).tokens);
+		}
+
+		return TokenBuffer.concat(source, pieces);
+	}
+
+	//* Cuts the source into chunks of at least some size. Skips strings and comments exactly as the Scanner does.
+	private static List<Chunk> split(CharSequence source, int chunkSize) {
+		List<Chunk> chunks = new ArrayList<>();
+		int length = source.length();
+		int from = 0;
+		int fromLine = 1;
+		int line = 1;
+		int i = 0;
+
+		while (i < length) {
+			// Here, i always starts a lexeme. After a newline, it is a safe place to cut.
+			if (i - from >= chunkSize && source.charAt(i - 1) == '\n') {
+				chunks.add(new Chunk(from, i, fromLine));
+				from = i;
+				fromLine = line;
+			}
+
+			char c = source.charAt(i++);
+			if (c == '\n') {
+				line++;
+			} else if (c == '"') {
+				while (i < length && source.charAt(i) != '"') {
+					if (source.charAt(i) == '\n')
+						line++;
+					i++;
+				}
+				i++; // The closing "
+			} else if (c == '/' && i < length && source.charAt(i) == '/') {
+				while (i < length && source.charAt(i) != '\n')
+					i++;
+			} else if (c == '/' && i < length && source.charAt(i) == '*') {
+				i++;
+				// Same stopping rule as Scanner.scanToken(), so the cuts agree with it.
+				while (i < length && source.charAt(i) != '*' && (i + 1 >= length || source.charAt(i + 1) != '/')) {
+					if (source.charAt(i) == '\n')
+						line++;
+					i++;
+				}
+				i += 2; // The '*/'
+			}
+		}
+
+		chunks.add(new Chunk(from, length, fromLine));
+		return chunks;
+	}
+}
@@ -9,11 +9,23 @@ import static com.craftinginterpreters.jlox.TokenType.*;
 public class Parser {
 	private static class ParseError extends RuntimeException {}
 
-	private final List<Token> tokens;
-	private int current = 0;
+	private final TokenStream tokens;
+	//* Whether top-level function bodies are skimmed now and parsed on first call. See LazyBody.
+	private final boolean lazy;
+	//* How many blocks deep the parser is.
+	private int nesting = 0;
 
 	public Parser(List<Token> tokens) {
+		this(TokenStream.of(tokens));
+	}
+
+	Parser(TokenStream tokens) {
+		this(tokens, false);
+	}
+
+	Parser(TokenStream tokens, boolean lazy) {
 		this.tokens = tokens;
+		this.lazy = lazy;
 	}
 
 	public List<Stmt> parse() {
@@ -35,6 +47,8 @@ public class Parser {
 				return funDeclaration();
 			if (match(CLASS))
 				return classDeclaration();
+			if (match(IMPORT))
+				return importDeclaration();
 
 			return statement();
 
@@ -57,6 +71,14 @@ public class Parser {
 		return new Stmt.Var(name, initializer);
 	}
 
+	//* Parse an import. Note that the 'import' was consumed by the declaration() method.
+	private Stmt importDeclaration() {
+		Token keyword = previous();
+		Token path = consume(STRING, "Expected module path after 'import'.");
+		consume(SEMICOLON, "Expected ';' after import.");
+		return new Stmt.Import(keyword, (String) path.literal);
+	}
+
 	//* Parse a function declaration.
 	private Stmt funDeclaration() {
 		return function("function"); // Want a function to be made, so specify
@@ -80,6 +102,13 @@ public class Parser {
 		consume(RIGHT_PAREN, "Expected ')' after parameters.");
 
 		consume(LEFT_BRACE, "Expected '{' before " + kind + " body.");
+		if (lazy && nesting == 0) {
+			// Only bracket-match the body for now. The body list is filled in on the first call
+			Stmt.Function function = new Stmt.Function(name, parameters, new ArrayList<>());
+			function.lazy = new LazyBody(tokens.skipBlock());
+			consume(RIGHT_BRACE, "Expected '}' after block.");
+			return function;
+		}
 		List<Stmt> body = block();
 
 		return new Stmt.Function(name, parameters, body);
@@ -135,9 +164,11 @@ public class Parser {
 	private List<Stmt> block() {
 		List<Stmt> statements = new ArrayList<>();
 
+		nesting++;
 		while (!check(RIGHT_BRACE) && !isAtEnd()) {
 			statements.add(declaration());
 		}
+		nesting--;
 
 		consume(RIGHT_BRACE, "Expected '}' after block.");
 		// return new Stmt.Block(statements);
@@ -397,6 +428,10 @@ public class Parser {
 		}
 
 		Token paren = consume(RIGHT_PAREN, "Expected ')' after arguments.");
+		if (callee instanceof Expr.Get) { // A method call, which can then skip making a bound method
+			Expr.Get get = (Expr.Get) callee;
+			return new Expr.Invoke(get.object, get.name, paren, arguments);
+		}
 		return new Expr.Call(callee, paren, arguments);
 	}
 
@@ -449,36 +484,35 @@ public class Parser {
 	private boolean check(TokenType type) {
 		if (isAtEnd()) // Never match the end of the token sequence.
 			return false;
-		return peek().type == type;
+		return tokens.peekType() == type;
 	}
 
-	//* Consumes the current token and returns it.
-	private Token advance() {
-		if (!isAtEnd()) // Never go beyond the end.
-			current++;
-		return previous();
+	//* Consumes the current token. Use previous() to get at it.
+	private void advance() {
+		tokens.advance(); // Never goes beyond the end.
 	}
 
 	//* Returns the current token.
 	private Token peek() {
-		return tokens.get(current);
+		return tokens.peek();
 	}
 
 	//* Returns the most previously consumed token.
 	private Token previous() {
-		return tokens.get(current - 1);
+		return tokens.previous();
 	}
 
 	//* Determines if the current token is at the end of the list of tokens (i.e. are there tokens left?).
 	private boolean isAtEnd() {
-		return peek().type == EOF;
+		return tokens.peekType() == EOF;
 	}
 
 	//* Consumes the current token if it matches the given token type. Otherwise, throws an error.
 	private Token consume(TokenType type, String message) {
-		if (check(type))
-			return advance();
-		else
+		if (check(type)) {
+			advance();
+			return previous();
+		} else
 			throw error(peek(), message);
 	}
 
@@ -499,9 +533,10 @@ public class Parser {
 				return;
 
 			// In addition to semicolons (which always denote a new statement), we can also resume on a keyword.
-			switch (peek().type) {
+			switch (tokens.peekType()) {
 				case CLASS:
 				case FUNC:
+				case IMPORT:
 				case VAR:
 				case FOR:
 				case IF:
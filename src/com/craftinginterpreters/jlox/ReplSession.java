@@ -0,0 +1,142 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//* The state of an interactive session, fed one line of input at a time.
+// An input may span many lines. Each line is scanned once, as it arrives, and its tokens are kept until the input is
+// complete. The exception is a string or block comment which is still open at the end of a line: its text is held
+// back and scanned along with the line that closes it. Parsing is only tried once the brackets balance and the last
+// token could end a statement, so a large paste is parsed a statement at a time rather than once per line.
+//
+// One Resolver serves the whole session. The depths it finds live on each input's nodes, so they go away with the
+// input once nothing can run it again.
+class ReplSession {
+	private final Interpreter interpreter;
+	private final Resolver resolver;
+
+	//* Tokens of the current input so far, without an EOF.
+	private final List<Token> tokens = new ArrayList<>();
+	//* Text starting with a string or block comment which hasn't been closed yet.
+	private final StringBuilder held = new StringBuilder();
+	private int heldLine = 1; // Line the held text starts on
+	//* Open parentheses and braces in the current input.
+	private int depth = 0;
+	//* Line of the current input the next line of text is. Error lines count from the start of the input.
+	private int line = 1;
+
+	ReplSession(Interpreter interpreter) {
+		this.interpreter = interpreter;
+		this.resolver = new Resolver();
+	}
+
+	//* Whether the input so far is unfinished and more lines are expected.
+	boolean pending() {
+		return !tokens.isEmpty() || held.length() > 0;
+	}
+
+	//* Takes one line of input, running the input if the line completes it. A blank line forces an unfinished input to run.
+	void add(String text) {
+		if (text.trim().isEmpty() && held.length() == 0) {
+			if (!tokens.isEmpty())
+				complete(true);
+			return;
+		}
+
+		if (held.length() == 0)
+			heldLine = line;
+		held.append(text).append('\n');
+		line++;
+		if (endsOpen(held))
+			return;
+
+		Scanner scanner = new Scanner(held, 0, held.length(), heldLine);
+		for (Token token : scanner.scanTokens()) {
+			if (token.type == TokenType.EOF)
+				break;
+			if (token.type == TokenType.LEFT_PAREN || token.type == TokenType.LEFT_BRACE)
+				depth++;
+			else if (token.type == TokenType.RIGHT_PAREN || token.type == TokenType.RIGHT_BRACE)
+				depth--;
+			tokens.add(token);
+		}
+		held.setLength(0);
+
+		if (depth <= 0 && !tokens.isEmpty()) {
+			TokenType last = tokens.get(tokens.size() - 1).type;
+			if (last == TokenType.SEMICOLON || last == TokenType.RIGHT_BRACE)
+				complete(false);
+		}
+	}
+
+	//* Runs whatever is left at the end of input, so its errors are reported.
+	void finish() {
+		if (held.length() > 0) {
+			new Scanner(held, 0, held.length(), heldLine).scanTokens(); // Reports the unterminated string or comment
+			held.setLength(0);
+		}
+		if (!tokens.isEmpty())
+			complete(true);
+		Lox.hadError = false;
+	}
+
+	//* Parses, resolves and runs the current input. Unless forced, leaves it alone if it stops partway through a statement.
+	private void complete(boolean force) {
+		List<Token> input = new ArrayList<>(tokens);
+		input.add(new Token(TokenType.EOF, "", null, line - 1));
+
+		List<Diagnostic> errors = new ArrayList<>();
+		List<Stmt> statements = Lox.capture(errors, () -> new Parser(input).parse());
+		if (!force && !errors.isEmpty() && atEnd(errors))
+			return; // Something like 'if (x) print 1; else', which the next line can finish
+
+		Lox.replay(errors);
+		if (!Lox.hadError) {
+			resolver.resolve(statements);
+			if (!Lox.hadError)
+				interpreter.interpret(statements);
+		}
+
+		tokens.clear();
+		depth = 0;
+		line = 1;
+		Lox.hadError = false; // Each input is separate
+	}
+
+	//* Whether every error is about running out of tokens.
+	private static boolean atEnd(List<Diagnostic> errors) {
+		for (Diagnostic error : errors) {
+			if (!error.where.equals(" at end"))
+				return false;
+		}
+		return true;
+	}
+
+	//* Whether text ends inside a string or block comment. Skips them exactly as the Scanner does.
+	private static boolean endsOpen(CharSequence text) {
+		int length = text.length();
+		int i = 0;
+		while (i < length) {
+			char c = text.charAt(i++);
+			if (c == '"') {
+				while (i < length && text.charAt(i) != '"')
+					i++;
+				if (i >= length)
+					return true;
+				i++; // The closing "
+			} else if (c == '/' && i < length && text.charAt(i) == '/') {
+				while (i < length && text.charAt(i) != '\n')
+					i++;
+			} else if (c == '/' && i < length && text.charAt(i) == '*') {
+				i++;
+				// Same stopping rule as Scanner.scanToken()
+				while (i < length && text.charAt(i) != '*' && (i + 1 >= length || text.charAt(i + 1) != '/'))
+					i++;
+				if (i + 1 >= length)
+					return true;
+				i += 2; // The '*/'
+			}
+		}
+		return false;
+	}
+}
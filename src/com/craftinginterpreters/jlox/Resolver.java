@@ -1,12 +1,21 @@
 package com.craftinginterpreters.jlox;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
+import java.util.Set;
 
 // Traverses the AST between the Parser and Interpreter steps to 'resolve' (match) all variable references to the exact version of the variable that is in scope.
 // This prevents modification done after the initial declaration from affecting the original variable.
+// Results are written onto the variable-like nodes themselves (location and slot), so a resolved tree can be run by any interpreter.
+//
+// Every local lives in a frame: a run of slots on the interpreter's stack, one per call, given back when the call
+// returns. Blocks outside of any function get a frame of their own. A local which a nested function uses (a captured
+// local) is put in a Cell in its slot instead, and each closure copies just the cells it uses when it is made, so a
+// closure never keeps anything else from the scopes around it alive. Whether a local is captured is only known once
+// its scope closes, so references from its own function are settled then.
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	// Determines what type of function we are currently inside of.
 	private enum FunctionType {
@@ -22,19 +31,112 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		SUBCLASS
 	}
 
-	//* Interpreter to report variable location results to.
-	private final Interpreter interpreter;
+	//* Where a variable lives. A global, a slot in the running call's frame, a Cell in such a slot, or one of the
+	//* running closure's captured cells.
+	static final int GLOBAL = 0;
+	static final int LOCAL = 1;
+	static final int BOXED = 2;
+	static final int CAPTURED = 3;
+
+	//* A local variable in a scope being resolved.
+	private static class Local {
+		//* The frame it lives in, and its slot there.
+		final Frame frame;
+		final int slot;
+		//* Whether its initializer is done, so it can be read.
+		boolean defined = false;
+		//* Whether a nested function uses it, so it has to be kept in a Cell.
+		boolean captured = false;
+		//* The statement declaring it, which is told where the variable went. Null for parameters and 'this'/'super'.
+		final Stmt declaration;
+
+		Local(Frame frame, int slot, Stmt declaration) {
+			this.frame = frame;
+			this.slot = slot;
+			this.declaration = declaration;
+		}
+	}
+
+	//* The frame of a function (or an outermost block) being resolved. Scopes hand out its slots as locals are declared
+	//* and take them back when they close. It also collects the function's free variables.
+	private static class Frame {
+		//* The frame of the code the function is declared in. Null at the top level.
+		final Frame enclosing;
+		int next = 0;
+		int size = 0; // Most slots in use at once
+		//* Locals of enclosing frames the function uses, and where the closure gets each one's cell when it is made.
+		// A source is a slot in the enclosing frame, or -1 - i for the enclosing closure's own i'th captured cell.
+		final List<Local> captured = new ArrayList<>();
+		final List<Integer> sources = new ArrayList<>();
+
+		Frame(Frame enclosing) {
+			this.enclosing = enclosing;
+		}
+
+		//* Index of a local of an enclosing frame among the cells this frame's closure captures. Adds it if it is new,
+		//* capturing it through every function in between as well.
+		int capture(Local local) {
+			int index = captured.indexOf(local);
+			if (index != -1)
+				return index;
+
+			local.captured = true;
+			captured.add(local);
+			sources.add(local.frame == enclosing ? local.slot : -1 - enclosing.capture(local));
+			return captured.size() - 1;
+		}
+	}
+
+	//* A scope being resolved.
+	private static class Scope {
+		final Map<String, Local> locals = new LinkedHashMap<>();
+		//* The frame its locals go in.
+		final Frame frame;
+		//* The frame's first free slot when the scope opened.
+		final int mark;
+		//* References to its locals from their own function, waiting for the scope to close.
+		final List<Reference> references = new ArrayList<>();
+
+		Scope(Frame frame) {
+			this.frame = frame;
+			this.mark = frame.next;
+		}
+	}
+
+	//* A variable-like node which was found in its own function's frame.
+	private static class Reference {
+		final Expr expr;
+		final Local local;
+		//* Set for the 'this' half of a 'super' expression.
+		final boolean receiver;
+
+		Reference(Expr expr, Local local, boolean receiver) {
+			this.expr = expr;
+			this.local = local;
+			this.receiver = receiver;
+		}
+	}
+
+	//* Where a skimmed function body sits, so it can be resolved later as if it were resolved in place. See LazyBody.
+	// Skimmed functions are only ever at the top level or in a top-level class, so there are no scopes around them.
+	static class Context {
+		private final FunctionType type;
+		private final ClassType currentClass;
+
+		private Context(FunctionType type, ClassType currentClass) {
+			this.type = type;
+			this.currentClass = currentClass;
+		}
+	}
+
 	//* Stack of scopes currently in scope. Does NOT include the global scope.
-	//* The boolean tracks whether the variable is initialized (ready) or not.
-	private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+	//* A plain list rather than a Stack b/c a resolver is only ever used by one thread, so the locking is wasted.
+	private final List<Scope> scopes = new ArrayList<>();
 
 	private FunctionType currentFunction = FunctionType.NONE;
 	private ClassType currentClass = ClassType.NONE;
 
-	Resolver(Interpreter interpreter) {
-		this.interpreter = interpreter;
-	}
-	
+
 	//* Resolves a list of statements.
 	void resolve(List<Stmt> statements) {
 		// Go through each statement and resolve it.
@@ -43,6 +145,12 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		}
 	}
 
+	//* Resolves a function body which was skimmed earlier, as if it were resolved in place.
+	void resolveDeferred(Stmt.Function function, Context context) {
+		currentClass = context.currentClass;
+		resolveFunction(function, context.type);
+	}
+
 	//* Resolves a single statement.
 	private void resolve(Stmt stmt) {
 		stmt.accept(this);
@@ -53,29 +161,57 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		expr.accept(this);
 	}
 
-	//* Opens a new scope
+	//* Opens a new scope in the same frame as the current one. Outside of any scope, that is a new frame.
 	private void beginScope() {
-		scopes.push(new HashMap<String, Boolean>());
+		beginScope(scopes.isEmpty() ? new Frame(null) : currentScope().frame);
+	}
+
+	//* Opens a new scope using a frame. Functions open their outermost scope with a new one.
+	private void beginScope(Frame frame) {
+		scopes.add(new Scope(frame));
+	}
+
+	//* Closes the current scope. Now that every use of its locals has been seen, it can be decided where they live.
+	private Scope endScope() {
+		Scope scope = scopes.remove(scopes.size() - 1);
+
+		for (Local local : scope.locals.values()) {
+			if (local.declaration != null)
+				place(local.declaration, local.captured ? BOXED : LOCAL, local.slot);
+		}
+		for (Reference reference : scope.references)
+			locate(reference.expr, reference.local.captured ? BOXED : LOCAL, reference.local.slot, reference.receiver);
+
+		scope.frame.next = scope.mark; // Its slots can be reused by the next scope
+		return scope;
 	}
 
-	//* Closes the current scope
-	private void endScope() {
-		scopes.pop();
+	//* The innermost open scope.
+	private Scope currentScope() {
+		return scopes.get(scopes.size() - 1);
 	}
 
 	//* Declares a variable by adding it to the scopes. This is done before initialization so that it will shadow any other variables with the same name when determining initialization.
-	private void declare(Token name) {
+	private Local declare(Token name) {
+		return declare(name, null);
+	}
+
+	//* Declares a variable, remembering the statement which declares it. Returns null for globals.
+	private Local declare(Token name, Stmt declaration) {
 		if (scopes.isEmpty()) {
-			return;
+			return null;
 		}
 
-		Map<String, Boolean> scope = scopes.peek();
+		Scope scope = currentScope();
 
-		if (scope.containsKey(name.lexeme)) {
+		if (scope.locals.containsKey(name.lexeme)) {
 			Lox.error(name, "Variable with this name already declared in this scope.");
 		}
 
-		scope.put(name.lexeme, false); // Variable exists (is in scopes) but not 'ready' for use
+		Local local = new Local(scope.frame, scope.frame.next++, declaration);
+		scope.frame.size = Math.max(scope.frame.size, scope.frame.next);
+		scope.locals.put(name.lexeme, local); // Variable exists (is in scopes) but not 'ready' for use
+		return local;
 	}
 
 	//* Define a variable and mark it ready for use.
@@ -85,29 +221,138 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 			return;
 		}
 
-		scopes.peek().put(name.lexeme, true); // Variable is ready for use
+		currentScope().locals.get(name.lexeme).defined = true; // Variable is ready for use
+	}
+
+	//* Declares and defines a variable the interpreter adds by itself, like 'this'. It takes the next slot, like a parameter.
+	private void defineImplicit(String name) {
+		Scope scope = currentScope();
+		Local local = new Local(scope.frame, scope.frame.next++, null);
+		scope.frame.size = Math.max(scope.frame.size, scope.frame.next);
+		local.defined = true;
+		scope.locals.put(name, local);
 	}
 
-	//* Look for a variable in scopes. If found, return the number of environment 'hops' to find it to the interpreter so it can find the right one.
+	//* Look for a variable in scopes and store where it lives on the node.
 	private void resolveLocal(Expr expr, Token name) {
-		// This function counts how far it goes until it finds the variable and if found, it reports it to the interpreter who keeps that info.
-		// If it isn't found, it does nothing. When the interpreter looks for the value, it will find null and know to look in the global scope.
+		resolveLocal(expr, name.lexeme, false);
+	}
+
+	//* Look for a variable in scopes. A local of another function is captured now; one of the current function is
+	//* noted so its location can be stored on the node once its scope closes.
+	private void resolveLocal(Expr expr, String name, boolean receiver) {
+		// If it isn't found, the node is marked global. When the interpreter sees that, it looks in the global scope.
 		for (int i = scopes.size() - 1; i >= 0; i--) {
-			if (scopes.get(i).containsKey(name.lexeme)) {
-				interpreter.resolve(expr, scopes.size() - 1 - i);
+			Scope scope = scopes.get(i);
+			Local local = scope.locals.get(name);
+			if (local != null) {
+				Frame frame = currentScope().frame;
+				if (local.frame == frame)
+					scope.references.add(new Reference(expr, local, receiver));
+				else
+					locate(expr, CAPTURED, frame.capture(local), receiver);
 				return;
 			}
 		}
 
 		// If unresolved, assume global
+		locate(expr, GLOBAL, 0, receiver);
+	}
+
+	//* Whether any of the statements declare a variable in the scope they are in.
+	private static boolean declares(List<Stmt> statements) {
+		for (Stmt statement : statements) {
+			if (statement instanceof Stmt.Var || statement instanceof Stmt.Function || statement instanceof Stmt.Class)
+				return true;
+		}
+		return false;
+	}
+
+	//* Tells a declaring statement where its variable lives.
+	private static void place(Stmt declaration, int location, int slot) {
+		if (declaration instanceof Stmt.Var) {
+			((Stmt.Var) declaration).location = location;
+			((Stmt.Var) declaration).slot = slot;
+		} else if (declaration instanceof Stmt.Function) {
+			((Stmt.Function) declaration).location = location;
+			((Stmt.Function) declaration).slot = slot;
+		} else {
+			((Stmt.Class) declaration).location = location;
+			((Stmt.Class) declaration).slot = slot;
+		}
+	}
+
+	//~ Node Locations
+
+	//* Stores where a variable-like node (Variable, Assign, This or Super) finds its variable. For a 'super', the
+	//* receiver flag picks the 'this' it binds to instead of the superclass.
+	static void locate(Expr expr, int location, int slot, boolean receiver) {
+		if (expr instanceof Expr.Variable) {
+			((Expr.Variable) expr).location = location;
+			((Expr.Variable) expr).slot = slot;
+		} else if (expr instanceof Expr.Assign) {
+			((Expr.Assign) expr).location = location;
+			((Expr.Assign) expr).slot = slot;
+		} else if (expr instanceof Expr.This) {
+			((Expr.This) expr).location = location;
+			((Expr.This) expr).slot = slot;
+		} else if (receiver) {
+			((Expr.Super) expr).thisLocation = location;
+			((Expr.Super) expr).thisSlot = slot;
+		} else {
+			((Expr.Super) expr).location = location;
+			((Expr.Super) expr).slot = slot;
+		}
+	}
+
+	//* The location stored on a variable-like node.
+	static int location(Expr expr) {
+		if (expr instanceof Expr.Variable)
+			return ((Expr.Variable) expr).location;
+		if (expr instanceof Expr.Assign)
+			return ((Expr.Assign) expr).location;
+		if (expr instanceof Expr.This)
+			return ((Expr.This) expr).location;
+		return ((Expr.Super) expr).location;
+	}
+
+	//* The slot stored on a variable-like node.
+	static int slot(Expr expr) {
+		if (expr instanceof Expr.Variable)
+			return ((Expr.Variable) expr).slot;
+		if (expr instanceof Expr.Assign)
+			return ((Expr.Assign) expr).slot;
+		if (expr instanceof Expr.This)
+			return ((Expr.This) expr).slot;
+		return ((Expr.Super) expr).slot;
 	}
 
 	//* Resolve a function's position in the scopes.
 	private void resolveFunction(Stmt.Function function, FunctionType type) {
+		if (function.lazy != null) {
+			// Not parsed yet. Remember where we are and resolve it once it is
+			function.lazy.context = new Context(type, currentClass);
+			// The parameters were parsed though, so their errors are reported now rather than on the first call
+			Set<String> params = new HashSet<>();
+			for (Token param : function.params) {
+				if (!params.add(param.lexeme))
+					Lox.error(param, "Variable with this name already declared in this scope.");
+			}
+			return;
+		}
+
 		FunctionType enclosingFunction = currentFunction; // save current enclosing function
 		currentFunction = type; // Update current 'within-a-function' state
 
-		beginScope(); // New scope for function body
+		Frame frame = new Frame(scopes.isEmpty() ? null : currentScope().frame);
+		beginScope(frame); // New scope for function body, and a frame for its calls
+		if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+			// Methods get the instance they are bound to, and the superclass, in the slots before the parameters
+			defineImplicit("this");
+			if (currentClass == ClassType.SUBCLASS)
+				defineImplicit("super");
+		}
+
 		for (Token param : function.params) {
 			declare(param); // Define and initialize parameters
 			define(param);
@@ -115,24 +360,51 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		resolve(function.body); // Resolve function body
 		// In _runtime_, we ignore the function AST's body and only touch it on a function call
 		// In _static analysis_, we immediately go into the body and perform work
-		endScope();
+		Scope scope = endScope();
 		currentFunction = enclosingFunction; // Restore 'within-a-function' state
+
+		// Tell the call how to set itself up: how big its frame is, which of its arguments go in cells, and which
+		// cells the closure takes along from where the function is declared
+		List<Integer> cells = new ArrayList<>();
+		for (Local local : scope.locals.values()) {
+			if (local.captured && local.declaration == null)
+				cells.add(local.slot);
+		}
+		function.frameSize = frame.size;
+		function.cells = toArray(cells);
+		function.captures = toArray(frame.sources);
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = list.get(i);
+		return array;
 	}
 
 	//~ Statements
 
 	@Override
 	public Void visitBlockStmt(Stmt.Block stmt) {
+		// A block which declares nothing has no scope of its own, like the one a for loop's body and increment go in.
+		// Outermost blocks still get one, so everything nested in them shares their frame.
+		if (!scopes.isEmpty() && !declares(stmt.statements)) {
+			resolve(stmt.statements);
+			return null;
+		}
+
 		beginScope(); // Open a scope
 		resolve(stmt.statements); // Traverse AST, adding to current scope
-		endScope(); // Discard current scope
+		Scope scope = endScope(); // Discard current scope
+		if (scopes.isEmpty())
+			stmt.frameSize = scope.frame.size; // Outermost blocks run in a frame of their own
 		return null;
 	}
 
 	@Override
 	public Void visitVarStmt(Stmt.Var stmt) {
 		//* Add the variable to the current scope
-		declare(stmt.name);
+		declare(stmt.name, stmt);
 		if (stmt.initializer != null) {
 			//* Resolve the initializer expression
 			resolve(stmt.initializer);
@@ -142,9 +414,17 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		// A module's declarations become globals, so importing from inside a scope would be misleading
+		if (!scopes.isEmpty())
+			Lox.error(stmt.keyword, "Can only import at the top level.");
+		return null;
+	}
+
 	@Override
 	public Void visitFunctionStmt(Stmt.Function stmt) {
-		declare(stmt.name);
+		declare(stmt.name, stmt);
 		define(stmt.name); // Define right after declaration to allow for recursive functions
 
 		resolveFunction(stmt, FunctionType.FUNCTION);
@@ -156,7 +436,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		ClassType enclosingClass = currentClass;
 		currentClass = ClassType.CLASS;
 
-		declare(stmt.name); // Allows classes to be local
+		declare(stmt.name, stmt); // Allows classes to be local
 		define(stmt.name);
 
 		if (stmt.superclass != null) { // Normally a global, but b/c Lox doesnt forbid local classes, we need to check for it
@@ -167,15 +447,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 			resolve(stmt.superclass);
 		}
 
-		// Add super to the environment of the class. Create it as a layer between the outer scope and class methods scope so it will catch
-		if (stmt.superclass != null) {
-			beginScope();
-			scopes.peek().put("super", true);
-		}
-
-		beginScope(); // Open a scope for the class
-		scopes.peek().put("this", true); // Insert 'this' into the scope b/c it isnt declared anywhere
-
+		// 'this' and 'super' are slots of each method's own frame. See resolveFunction()
 		for (Stmt.Function method : stmt.methods) {
 			FunctionType declaration = FunctionType.METHOD;
 			if (method.name.lexeme.equals("init")) {
@@ -184,11 +456,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 			resolveFunction(method, declaration);
 		}
 
-		if (stmt.superclass != null)
-			endScope();
-
 		currentClass = enclosingClass;
-		endScope();
 		return null;
 	}
 	
@@ -200,7 +468,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 			Lox.error(expr.keyword, "Cannot use 'super' in a class without a superclass.");
 
 		resolveLocal(expr, expr.keyword); // Resolve as if it were a variable
-		// b/c we defined super in the scope immediately before the class' we will always catch it there
+		resolveLocal(expr, "this", true); // And the instance the superclass' method is bound to
 		return null;
 	}
 
@@ -210,7 +478,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	public Void visitVariableExpr(Expr.Variable expr) {
 		//* If variable exists but is not ready, that means we are between the declaration and initialization of the variable. Thrown an error if used.
 		// By doing declaration separate, we can shadow any duplicate variables
-		if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
+		Local local = scopes.isEmpty() ? null : currentScope().locals.get(expr.name.lexeme);
+		if (local != null && !local.defined) {
 			Lox.error(expr.name, "Cannot read local variable in its own initializer.");
 		}
 
@@ -302,6 +571,17 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 	
+	@Override
+	public Void visitInvokeExpr(Expr.Invoke expr) {
+		resolve(expr.object);
+
+		for (Expr argument : expr.arguments) {
+			resolve(argument);
+		}
+
+		return null;
+	}
+
 	@Override
 	public Void visitGroupingExpr(Expr.Grouping expr) {
 		resolve(expr.expression);
@@ -4,7 +4,7 @@ class RuntimeError extends RuntimeException {
 	final Token token;
 
 	public RuntimeError(Token token, String message) {
-		super(message);
+		super(message, null, false, false); // Only the Lox line is reported, so filling in a Java stack trace is wasted
 		this.token = token;
 	}
 }
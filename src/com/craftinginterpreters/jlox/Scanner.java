@@ -8,15 +8,18 @@ import java.util.Map;
 import static com.craftinginterpreters.jlox.TokenType.*;
 
 public class Scanner {
-	// The source code to be scanned.
-	private final String source;
-	// Output token stream.
-	private final List<Token> tokens = new ArrayList<>();
+	// The source code to be scanned. Either a String or a memory-mapped MappedSource.
+	private final CharSequence source;
+	// The most recently scanned token. Filled by addToken() and drained by nextToken().
+	private Token next = null;
+	// When set, tokens are recorded into this buffer instead of being built as Token objects.
+	private TokenBuffer buffer = null;
 
 	// Scanner location tracking variables
 	private int start = 0; 		// start of the current lexeme
 	private int current = 0; 	// current scanner position
 	private int line = 1; // current line
+	private final int end; // where scanning stops. Usually the end of the source
 	
 	// Keywords
 	private static final Map<String, TokenType> keywords;
@@ -29,6 +32,7 @@ public class Scanner {
 		keywords.put("for", 		FOR);
 		keywords.put("fun", 		FUNC);
 		keywords.put("if", 			IF);
+		keywords.put("import", 	IMPORT);
 		keywords.put("nil", 		NIL);
 		keywords.put("or", 			OR);
 		keywords.put("print", 	PRINT);
@@ -40,23 +44,62 @@ public class Scanner {
 		keywords.put("while", 	WHILE);
 		
 	}
+	private static final String[] keywordNames = keywords.keySet().toArray(new String[0]);
 
 	//* Constructs a new Scanner object with some source code to scan.
-	Scanner(String source) {
+	Scanner(CharSequence source) {
+		this(source, 0, source.length(), 1);
+	}
+
+	//* Constructs a Scanner which only scans part of the source, starting at a known line. Must begin and end between lexemes.
+	Scanner(CharSequence source, int from, int to, int line) {
 		this.source = source;
+		this.current = from;
+		this.end = to;
+		this.line = line;
 	}
 
 	//* Scans the source code and returns a list of tokens.
 	List<Token> scanTokens() {
+		List<Token> tokens = new ArrayList<>();
+		Token token;
+		do {
+			token = nextToken();
+			tokens.add(token);
+		} while (token.type != EOF);
+
+		return tokens;
+	}
+
+	//* Scans the source code into a compact buffer. No Token objects are made until the Parser asks for them.
+	TokenBuffer scanBuffer() {
+		buffer = new TokenBuffer(source, end - current);
 		while (!isAtEnd()) {
 			// At the beginning of the next lexeme.
 			start = current;
 			scanToken();
 		}
 
-		// Add EOF at the end.
-		tokens.add(new Token(EOF, "", null, line));
-		return tokens;
+		buffer.add(EOF, current, 0, line);
+		buffer.trim();
+		return buffer;
+	}
+
+	//* Scans only as far as the next token and returns it. Returns EOF (repeatedly) once the source is exhausted.
+	Token nextToken() {
+		while (!isAtEnd()) {
+			// At the beginning of the next lexeme.
+			start = current;
+			scanToken();
+
+			if (next != null) { // Whitespace and comments produce nothing, so keep going
+				Token token = next;
+				next = null;
+				return token;
+			}
+		}
+
+		return new Token(EOF, "", null, line);
 	}
 
 	//* Parse and add the next token
@@ -134,7 +177,7 @@ public class Scanner {
 						advance();
 					}
 
-					if (current + 1 >= source.length()) {
+					if (current + 1 >= end) {
 						Lox.error(line, "Unterminated block comment.");
 					} else {
 						advance(); // Skip the '*/'
@@ -186,7 +229,7 @@ public class Scanner {
 
 	//* Returns the character ahead of current.
 	private char peekNext() {
-		if (current + 1 >= source.length())
+		if (current + 1 >= end)
 			return '\0';
 		return source.charAt(current + 1);
 	}
@@ -207,18 +250,21 @@ public class Scanner {
 
 	//~ Token Creation
 
-	//* Add a token without a value to the list of tokens.
+	//* Emit a token. Numbers and strings get their value from their text.
 	private void addToken(TokenType type) {
-		addToken(type, null);
+		if (buffer != null) {
+			// The buffer works the text and value back out of the source when they are needed
+			buffer.add(type, start, current - start, line);
+			return;
+		}
+
+		String text = text(start, current);
+		next = new Token(type, text, literal(type, text), line);
 	}
 
-	/**
-	 * Add a token with a value to the list of tokens.
-	 * Includes all values required to define a token.
-	 */
-	private void addToken(TokenType type, Object literal) {
-		String text = source.substring(start, current);
-		tokens.add(new Token(type, text, literal, line));
+	//* Copies a range of the source out as a string.
+	private String text(int from, int to) {
+		return source.subSequence(from, to).toString();
 	}
 
 	//~ Token Mini Parsers
@@ -240,8 +286,7 @@ public class Scanner {
 		// Consume the trailing "
 		advance();
 
-		String value = source.substring(start + 1, current - 1); // Exclude the "s
-		addToken(STRING, value);
+		addToken(STRING);
 	}
 	
 	//* Parses and adds a number token
@@ -260,7 +305,7 @@ public class Scanner {
 				advance();
 		}
 
-		addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+		addToken(NUMBER);
 	}
 
 	//* Parses and adds an identifier token or a keyword
@@ -268,12 +313,35 @@ public class Scanner {
 		while (isAlphaNumeric(peek()))
 			advance();
 
-		String text = source.substring(start, current);
-		TokenType type = keywords.get(text); // Check if it's a keyword
-		if (type == null) // If not, it is an identifier
-			type = IDENTIFIER;
+		addToken(keyword()); // Check if it's a keyword. If not, it is an identifier
+	}
+
+	//* Returns the keyword the current lexeme spells, or IDENTIFIER. Compares in place so no string is made.
+	private TokenType keyword() {
+		int length = current - start;
+		for (String keyword : keywordNames) {
+			if (keyword.length() != length)
+				continue;
+
+			int i = 0;
+			while (i < length && source.charAt(start + i) == keyword.charAt(i))
+				i++;
+			if (i == length)
+				return keywords.get(keyword);
+		}
+		return IDENTIFIER;
+	}
 
-		addToken(type);
+	//* Works out the Java value a number or string token carries from its text. Other tokens carry none.
+	static Object literal(TokenType type, String text) {
+		switch (type) {
+			case NUMBER:
+				return Double.parseDouble(text);
+			case STRING:
+				return text.substring(1, text.length() - 1); // Exclude the "s
+			default:
+				return null;
+		}
 	}
 
 	//~ Character and Position Checkers
@@ -297,7 +365,7 @@ public class Scanner {
 
 	//* Check if the current char is at the end of the source code.
 	private boolean isAtEnd() {
-		return current >= source.length();
+		return current >= end;
 	}
 
 }
@@ -0,0 +1,61 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//* The layout of an instance's fields: which slot of its values array each one is in.
+// Every class has an empty root shape. Giving an instance a new field moves it to the next shape along, and the
+// step is remembered, so instances of a class which get the same fields in the same order end up sharing a shape.
+// Instances only store their values, and the names are kept once per shape instead of once per instance.
+class Shape {
+	//* Past this many fields an instance stops using shapes and keeps its fields in a map instead (see LoxInstance).
+	// Objects used as dictionaries would otherwise make a new shape for every key they are given.
+	static final int MAX_FIELDS = 32;
+
+	//* Slots of the fields, by name.
+	private final Map<String, Integer> slots;
+	//* The shapes reached by adding a field to this one. Made on first use, as most shapes are never added to.
+	private Map<String, Shape> transitions = null;
+
+	//* Makes the empty shape a class' instances start out with.
+	Shape() {
+		this.slots = new HashMap<>();
+	}
+
+	private Shape(Shape previous, String name) {
+		this.slots = new HashMap<>(previous.slots);
+		this.slots.put(name, slots.size());
+	}
+
+	//* Returns the slot of a field, or -1 if instances with the shape don't have it.
+	int slot(String name) {
+		Integer slot = slots.get(name);
+		return slot == null ? -1 : slot;
+	}
+
+	//* Number of fields, which is also the slot the next one goes in.
+	int size() {
+		return slots.size();
+	}
+
+	//* Returns the shape with one more field, which goes in the slot size() returns.
+	Shape with(String name) {
+		if (transitions == null)
+			transitions = new HashMap<>();
+
+		Shape next = transitions.get(name);
+		if (next == null) {
+			next = new Shape(this, name);
+			transitions.put(name, next);
+		}
+		return next;
+	}
+
+	//* Names of the fields, in slot order. Used to move an instance's fields into a map.
+	String[] names() {
+		String[] names = new String[slots.size()];
+		for (Map.Entry<String, Integer> entry : slots.entrySet())
+			names[entry.getValue()] = entry.getKey();
+		return names;
+	}
+}
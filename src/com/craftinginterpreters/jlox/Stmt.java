@@ -9,6 +9,7 @@ abstract class Stmt {
 		R visitExpressionStmt(Expression stmt);
 		R visitFunctionStmt(Function stmt);
 		R visitIfStmt(If stmt);
+		R visitImportStmt(Import stmt);
 		R visitPrintStmt(Print stmt);
 		R visitReturnStmt(Return stmt);
 		R visitVarStmt(Var stmt);
@@ -17,6 +18,8 @@ abstract class Stmt {
 
 	static class Block extends Stmt {
 		final List<Stmt> statements;
+		// Filled in after parsing.
+		int frameSize = 0;
 
 		Block(List<Stmt> statements) {
 			this.statements = statements;
@@ -32,6 +35,9 @@ abstract class Stmt {
 		final Token name;
 		final Expr.Variable superclass;
 		final List<Stmt.Function> methods;
+		// Filled in after parsing.
+		int location = 0;
+		int slot = 0;
 
 		Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
 			this.name = name;
@@ -62,6 +68,14 @@ abstract class Stmt {
 		final Token name;
 		final List<Token> params;
 		final List<Stmt> body;
+		// Filled in after parsing.
+		LazyBody lazy = null;
+		int location = 0;
+		int slot = 0;
+		int frameSize = 0;
+		int[] cells = null;
+		int[] captures = null;
+		ClosureCompiler.Step compiled = null;
 
 		Function(Token name, List<Token> params, List<Stmt> body) {
 			this.name = name;
@@ -92,6 +106,21 @@ abstract class Stmt {
 		}
 	}
 
+	static class Import extends Stmt {
+		final Token keyword;
+		final String path;
+
+		Import(Token keyword, String path) {
+			this.keyword = keyword;
+			this.path = path;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitImportStmt(this);
+		}
+	}
+
 	static class Print extends Stmt {
 		final Expr expression;
 
@@ -123,6 +152,9 @@ abstract class Stmt {
 	static class Var extends Stmt {
 		final Token name;
 		final Expr initializer;
+		// Filled in after parsing.
+		int location = 0;
+		int slot = 0;
 
 		Var(Token name, Expr initializer) {
 			this.name = name;
@@ -0,0 +1,224 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.Arrays;
+import java.util.List;
+
+//* Struct-of-arrays storage for scanned tokens. Filled by Scanner.scanBuffer() and read by the Parser.
+// A token costs 13 bytes here instead of a Token object, its lexeme String and a boxed literal.
+// Token objects are only made when the Parser consumes a token it keeps (names, operators, literals), and
+// every identifier with the same spelling shares one interned lexeme.
+class TokenBuffer implements TokenStream {
+	private static final TokenType[] types = TokenType.values();
+
+	private final CharSequence source;
+
+	// One entry per token
+	private byte[] type;
+	private int[] start;
+	private int[] length;
+	private int[] line;
+	private int count = 0;
+
+	// Identifier lexemes, interned by their spelling in the source. Open addressing, always at most half full.
+	private String[] names = new String[64];
+	private int nameCount = 0;
+
+	// Parser position
+	private int current = 0;
+	// The last token handed out, so asking twice doesn't make two objects.
+	private int cachedIndex = -1;
+	private Token cachedToken = null;
+
+	//* Makes an empty buffer for tokens from a source, sized for scanning some number of its chars.
+	TokenBuffer(CharSequence source, int chars) {
+		this.source = source;
+
+		int capacity = Math.max(16, chars / 8); // A guess. trim() gives back what goes unused
+		type = new byte[capacity];
+		start = new int[capacity];
+		length = new int[capacity];
+		line = new int[capacity];
+	}
+
+	//* Records a token by its position in the source.
+	void add(TokenType tokenType, int tokenStart, int tokenLength, int tokenLine) {
+		if (count == type.length) {
+			int capacity = count * 2;
+			type = Arrays.copyOf(type, capacity);
+			start = Arrays.copyOf(start, capacity);
+			length = Arrays.copyOf(length, capacity);
+			line = Arrays.copyOf(line, capacity);
+		}
+
+		type[count] = (byte) tokenType.ordinal();
+		start[count] = tokenStart;
+		length[count] = tokenLength;
+		line[count] = tokenLine;
+		count++;
+	}
+
+	//* Joins buffers scanned from consecutive pieces of one source. Only the last piece's EOF is kept.
+	static TokenBuffer concat(CharSequence source, List<TokenBuffer> pieces) {
+		int total = 1;
+		for (TokenBuffer piece : pieces)
+			total += piece.count - 1;
+
+		TokenBuffer joined = new TokenBuffer(source, 0);
+		joined.type = new byte[total];
+		joined.start = new int[total];
+		joined.length = new int[total];
+		joined.line = new int[total];
+
+		for (int i = 0; i < pieces.size(); i++) {
+			TokenBuffer piece = pieces.get(i);
+			int size = i == pieces.size() - 1 ? piece.count : piece.count - 1;
+			System.arraycopy(piece.type, 0, joined.type, joined.count, size);
+			System.arraycopy(piece.start, 0, joined.start, joined.count, size);
+			System.arraycopy(piece.length, 0, joined.length, joined.count, size);
+			System.arraycopy(piece.line, 0, joined.line, joined.count, size);
+			joined.count += size;
+		}
+		return joined;
+	}
+
+	//* Shrinks the arrays to fit once scanning is done.
+	void trim() {
+		type = Arrays.copyOf(type, count);
+		start = Arrays.copyOf(start, count);
+		length = Arrays.copyOf(length, count);
+		line = Arrays.copyOf(line, count);
+	}
+
+	//* Number of tokens in the buffer, including the trailing EOF.
+	int size() {
+		return count;
+	}
+
+	TokenType type(int index) {
+		return types[type[index]];
+	}
+
+	int line(int index) {
+		return line[index];
+	}
+
+	//* Builds the Token object for an entry.
+	Token get(int index) {
+		if (index == cachedIndex)
+			return cachedToken;
+
+		TokenType tokenType = type(index);
+		String lexeme = tokenType.lexeme;
+		Object literal = null;
+		if (tokenType == TokenType.IDENTIFIER) {
+			lexeme = intern(start[index], length[index]);
+		} else if (lexeme == null) { // Numbers and strings
+			lexeme = source.subSequence(start[index], start[index] + length[index]).toString();
+			literal = Scanner.literal(tokenType, lexeme);
+		}
+
+		cachedIndex = index;
+		cachedToken = new Token(tokenType, lexeme, literal, line[index]);
+		return cachedToken;
+	}
+
+	//~ TokenStream
+
+	@Override
+	public TokenType peekType() {
+		return type(current);
+	}
+
+	@Override
+	public Token peek() {
+		return get(current);
+	}
+
+	@Override
+	public Token previous() {
+		return get(current - 1);
+	}
+
+	@Override
+	public void advance() {
+		if (type(current) != TokenType.EOF)
+			current++;
+	}
+
+	//* Skips by type alone, so no Token objects are made. The skipped entries are copied into a buffer of their own.
+	@Override
+	public TokenStream skipBlock() {
+		int from = current;
+		int depth = 0;
+		while (type(current) != TokenType.EOF) {
+			if (type(current) == TokenType.LEFT_BRACE) {
+				depth++;
+			} else if (type(current) == TokenType.RIGHT_BRACE) {
+				if (depth == 0)
+					break;
+				depth--;
+			}
+			current++;
+		}
+
+		TokenBuffer skipped = new TokenBuffer(source, 0);
+		skipped.count = current - from;
+		skipped.type = Arrays.copyOfRange(type, from, current + 1);
+		skipped.start = Arrays.copyOfRange(start, from, current + 1);
+		skipped.length = Arrays.copyOfRange(length, from, current + 1);
+		skipped.line = Arrays.copyOfRange(line, from, current + 1);
+		skipped.add(TokenType.EOF, start[current], 0, line[current]); // In place of the closing '}'
+		return skipped;
+	}
+
+	//~ Interning
+
+	//* Returns the one String for an identifier's spelling, making it the first time it is seen.
+	private String intern(int from, int size) {
+		int hash = 0;
+		for (int i = from; i < from + size; i++)
+			hash = 31 * hash + source.charAt(i);
+
+		int mask = names.length - 1;
+		for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+			String name = names[slot];
+			if (name == null) {
+				name = source.subSequence(from, from + size).toString();
+				names[slot] = name;
+				if (++nameCount * 2 > names.length)
+					rehash();
+				return name;
+			}
+
+			if (spells(name, from, size))
+				return name;
+		}
+	}
+
+	//* Checks if the source at a position spells a name.
+	private boolean spells(String name, int from, int size) {
+		if (name.length() != size)
+			return false;
+		for (int i = 0; i < size; i++) {
+			if (name.charAt(i) != source.charAt(from + i))
+				return false;
+		}
+		return true;
+	}
+
+	//* Doubles the intern table.
+	private void rehash() {
+		String[] old = names;
+		names = new String[old.length * 2];
+		int mask = names.length - 1;
+		for (String name : old) {
+			if (name == null)
+				continue;
+
+			int slot = name.hashCode() & mask; // Same hash as intern() b/c identifiers are ASCII
+			while (names[slot] != null)
+				slot = (slot + 1) & mask;
+			names[slot] = name;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//* A sequence of tokens which the Parser pulls from one at a time.
+// The Parser only ever looks at the current and the previous token, so a stream never needs to hold more than that.
+interface TokenStream {
+	//* Returns the current token w/o consuming it.
+	Token peek();
+
+	//* Returns the type of the current token. Lets streams answer without building a Token.
+	default TokenType peekType() {
+		return peek().type;
+	}
+
+	//* Returns the most previously consumed token.
+	Token previous();
+
+	//* Consumes the current token. Never moves beyond EOF.
+	void advance();
+
+	/**
+	 * Skips ahead to the '}' which closes the block the stream is in, w/o consuming it.
+	 * Returns the skipped tokens as a stream of their own, ending in EOF. Stops at EOF if the braces don't balance.
+	 */
+	default TokenStream skipBlock() {
+		List<Token> skipped = new ArrayList<>();
+		int depth = 0;
+		while (peekType() != TokenType.EOF) {
+			if (peekType() == TokenType.LEFT_BRACE) {
+				depth++;
+			} else if (peekType() == TokenType.RIGHT_BRACE) {
+				if (depth == 0)
+					break;
+				depth--;
+			}
+			skipped.add(peek());
+			advance();
+		}
+
+		skipped.add(new Token(TokenType.EOF, "", null, peek().line));
+		return of(skipped);
+	}
+
+	//* A stream over tokens which have all been scanned up front.
+	static TokenStream of(List<Token> tokens) {
+		return new TokenStream() {
+			private int current = 0;
+
+			@Override
+			public Token peek() { return tokens.get(current); }
+
+			@Override
+			public Token previous() { return tokens.get(current - 1); }
+
+			@Override
+			public void advance() {
+				if (tokens.get(current).type != TokenType.EOF)
+					current++;
+			}
+		};
+	}
+
+	//* A stream which scans each token only when the Parser asks for it. Memory is bounded by the two-token window.
+	static TokenStream pull(Scanner scanner) {
+		return new TokenStream() {
+			private Token previous = null;
+			private Token current = scanner.nextToken();
+
+			@Override
+			public Token peek() { return current; }
+
+			@Override
+			public Token previous() { return previous; }
+
+			@Override
+			public void advance() {
+				if (current.type == TokenType.EOF)
+					return;
+				previous = current;
+				current = scanner.nextToken();
+			}
+		};
+	}
+}
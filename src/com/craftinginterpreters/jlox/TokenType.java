@@ -2,51 +2,59 @@ package com.craftinginterpreters.jlox;
 
 enum TokenType {
 	// Single-character tokens.
-	LEFT_PAREN, // (
-	RIGHT_PAREN, // )
-	LEFT_BRACE, // {
-	RIGHT_BRACE, // }
-	COMMA, // ,
-	DOT, // .
-	MINUS, // -
-	PLUS, // +
-	SEMICOLON, // ;
-	SLASH, // /
-	STAR, // *
+	LEFT_PAREN("("),
+	RIGHT_PAREN(")"),
+	LEFT_BRACE("{"),
+	RIGHT_BRACE("}"),
+	COMMA(","),
+	DOT("."),
+	MINUS("-"),
+	PLUS("+"),
+	SEMICOLON(";"),
+	SLASH("/"),
+	STAR("*"),
 
 	// One or two character tokens.
-	BANG, // !
-	BANG_EQUAL, // !=
-	EQUAL, // =
-	EQUAL_EQUAL, // ==
-	GREATER, // >
-	GREATER_EQUAL, // >=
-	LESSER, // <
-	LESSER_EQUAL, // <=
-	LESSER_DASH, // <-
+	BANG("!"),
+	BANG_EQUAL("!="),
+	EQUAL("="),
+	EQUAL_EQUAL("=="),
+	GREATER(">"),
+	GREATER_EQUAL(">="),
+	LESSER("<"),
+	LESSER_EQUAL("<="),
+	LESSER_DASH("<-"),
 
 	// Literals.
-	IDENTIFIER,
-	STRING,
-	NUMBER,
+	IDENTIFIER(null),
+	STRING(null),
+	NUMBER(null),
 
 	// Keywords.
-	AND,
-	CLASS,
-	ELSE,
-	FALSE,
-	FOR,
-	FUNC,
-	IF,
-	NIL,
-	OR,
-	PRINT,
-	RETURN,
-	SUPER,
-	THIS,
-	TRUE,
-	VAR,
-	WHILE,
+	AND("and"),
+	CLASS("class"),
+	ELSE("else"),
+	FALSE("false"),
+	FOR("for"),
+	FUNC("fun"),
+	IF("if"),
+	IMPORT("import"),
+	NIL("nil"),
+	OR("or"),
+	PRINT("print"),
+	RETURN("return"),
+	SUPER("super"),
+	THIS("this"),
+	TRUE("true"),
+	VAR("var"),
+	WHILE("while"),
 
-	EOF
+	EOF("");
+
+	//* How every token of this type is spelled in the source. Null for literals, which are spelled differently each time.
+	final String lexeme;
+
+	TokenType(String lexeme) {
+		this.lexeme = lexeme;
+	}
 }
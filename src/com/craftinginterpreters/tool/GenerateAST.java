@@ -17,30 +17,32 @@ public class GenerateAST {
 
 		//Create expression nodes
 		defineAst(outputDir, "Expr", Arrays.asList(
-				"Assign   : Token name, Expr value",
-				"Binary   : Expr left, Token operator, Expr right",
+				"Assign   : Token name, Expr value : int location = 0, int slot = 0, Environment.Cell cell = null",
+				"Binary   : Expr left, Token operator, Expr right : int kind = 0",
 				"Call     : Expr callee, Token paren, List<Expr> arguments",
-				"Get      : Expr object, Token name",
+				"Get      : Expr object, Token name : InlineCache cache = null",
 				"Grouping : Expr expression",
+				"Invoke   : Expr object, Token name, Token paren, List<Expr> arguments : InlineCache cache = null",
 				"Literal  : Object value",
 				"Logical  : Token operator, Expr left, Expr right",
-				"Set			: Expr object, Token name, Expr value",
-				"Super    : Token keyword, Token method",
-				"This     : Token keyword",
+				"Set			: Expr object, Token name, Expr value : InlineCache cache = null",
+				"Super    : Token keyword, Token method : int location = 0, int slot = 0, int thisLocation = 0, int thisSlot = 0, LoxClass superclass = null, LoxFunction target = null, int generation = 0",
+				"This     : Token keyword : int location = 0, int slot = 0",
 				"Unary    : Token operator, Expr right",
-				"Variable : Token name"
+				"Variable : Token name : int location = 0, int slot = 0, Environment.Cell cell = null"
 		));
 
 		// Create statement nodes
 		defineAst(outputDir, "Stmt", Arrays.asList(
-				"Block      : List<Stmt> statements",
-				"Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods",
+				"Block      : List<Stmt> statements : int frameSize = 0",
+				"Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods : int location = 0, int slot = 0",
 				"Expression : Expr expression",
-				"Function   : Token name, List<Token> params, List<Stmt> body",
+				"Function   : Token name, List<Token> params, List<Stmt> body : LazyBody lazy = null, int location = 0, int slot = 0, int frameSize = 0, int[] cells = null, int[] captures = null, ClosureCompiler.Step compiled = null",
 				"If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
+				"Import     : Token keyword, String path",
 				"Print      : Expr expression",
 				"Return     : Token keyword, Expr value",
-				"Var        : Token name, Expr initializer",
+				"Var        : Token name, Expr initializer : int location = 0, int slot = 0",
 				"While      : Expr condition, Stmt body"
 		));
 	}
@@ -63,9 +65,11 @@ public class GenerateAST {
 
 		// The AST classes
 		for (String type : types) {
-			String className = type.split(":")[0].trim(); // Name for the AST class
-			String fields = type.split(":")[1].trim(); // Fields to put into the AST class
-			defineType(writer, baseName, className, fields);
+			String[] parts = type.split(":");
+			String className = parts[0].trim(); // Name for the AST class
+			String fields = parts[1].trim(); // Fields to put into the AST class
+			String annotations = parts.length > 2 ? parts[2].trim() : null; // Mutable fields filled in after parsing
+			defineType(writer, baseName, className, fields, annotations);
 		}
 
 		// The base accept() method
@@ -88,7 +92,8 @@ public class GenerateAST {
 	}
 
 	//* Define a subtype of the base class. Creates fields, constructor and visitor methods.
-	private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
+	//* Annotations are extra fields with initializers, which later passes fill in. They are left out of the constructor.
+	private static void defineType(PrintWriter writer, String baseName, String className, String fieldList, String annotations) {
 		writer.println("	static class " + className + " extends " + baseName + " {");
 		String[] fields = fieldList.split(", ");
 
@@ -96,6 +101,12 @@ public class GenerateAST {
 		for (String field : fields) {
 			writer.println("		final " + field + ";");
 		}
+		if (annotations != null) {
+			writer.println("		// Filled in after parsing.");
+			for (String annotation : annotations.split(", ")) {
+				writer.println("		" + annotation + ";");
+			}
+		}
 		writer.println();
 
 		// Constructor